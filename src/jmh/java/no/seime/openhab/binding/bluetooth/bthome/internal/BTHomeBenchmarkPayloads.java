@@ -0,0 +1,42 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import org.mockito.Mockito;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.internal.ThingImpl;
+
+/**
+ * Payloads and fixtures shared by the benchmarks. The payloads are the ones used by the unit tests.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+final class BTHomeBenchmarkPayloads {
+
+    static final String B_PARASITE = "b-parasite";
+    static final String MULTI_SENSOR = "multi-sensor";
+
+    private BTHomeBenchmarkPayloads() {
+    }
+
+    static byte[] get(String name) {
+        return switch (name) {
+            case B_PARASITE -> TestUtils
+                    .byteStringToByteArray("64, 2, -54, 9, 46, 40, 5, 0, 0, 0, 12, -10, 12, 47, 0, 1, 100,1,100");
+            case MULTI_SENSOR -> TestUtils.byteStringToByteArray(
+                    "64, 2, -54, 9, 46, 40, 5, 0, 0, 0, 12, -10, 12, 47, 0, 1, 100,33,1,45,0,63,2,12,-16,2,0");
+            default -> throw new IllegalArgumentException("Unknown payload " + name);
+        };
+    }
+
+    /**
+     * Initialized handler of a new thing without channels. The callback does not record invocations, but its calls
+     * are included in the measured time and allocations.
+     */
+    static BTHomeHandler createHandler() {
+        Thing thing = new ThingImpl(BTHomeBindingConstants.THING_TYPE_DEVICE, "device");
+        BTHomeHandler handler = new TestableBTHomeHandler(thing, Mockito.mock(BTHomeChannelTypeProvider.class));
+        handler.setCallback(Mockito.mock(ThingHandlerCallback.class, Mockito.withSettings().stubOnly()));
+        handler.initialize();
+        return handler;
+    }
+}
@@ -0,0 +1,136 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays a capture into one handler per device, at the recorded pace (speed 1), compressed (speed N) or as fast as
+ * possible (speed 0, {@link BTHomeCaptureReplayer#MAX_SPEED}). The advertisements delivered per second are reported
+ * as the <code>records</code> counter.
+ *
+ * A capture recorded with the <code>captureFile</code> binding setting is replayed with
+ * <code>-Djmh.args="BTHomeCaptureReplayBenchmark -p captureFile=/path/to/capture.bin"</code>, otherwise a capture of
+ * {@link #DEVICES} devices, spanning 2 seconds, is generated.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-jmh.xml")
+@State(Scope.Thread)
+public class BTHomeCaptureReplayBenchmark {
+
+    private static final int DEVICES = 50;
+    private static final int RECORDS_PER_DEVICE = 40;
+    private static final long RECORD_INTERVAL_MILLIS = 1;
+
+    @Param({ "0", "10", "1" })
+    public double speed;
+
+    @Param({ "" })
+    public String captureFile;
+
+    private Path generatedFile;
+    private BTHomeCaptureReplayer replayer;
+    private final Map<String, BTHomeHandler> handlers = new HashMap<>();
+
+    /**
+     * Records delivered, reported per second next to the replays per second
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Records {
+        public long records;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            records = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path file;
+        if (captureFile.isEmpty()) {
+            file = Files.createTempFile("bthome-capture", ".bin");
+            generatedFile = file;
+            generateCapture(file);
+        } else {
+            file = Path.of(captureFile);
+        }
+        replayer = new BTHomeCaptureReplayer(file);
+    }
+
+    // Every replay starts over with the packet id windows, duplicate filters and caches of a newly initialized
+    // handler, otherwise the replayed advertisements are dropped as seen before. The channels are kept.
+    @Setup(Level.Invocation)
+    public void reinitialize() {
+        for (BTHomeHandler handler : handlers.values()) {
+            handler.dispose();
+            handler.initialize();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        handlers.values().forEach(BTHomeHandler::dispose);
+        handlers.clear();
+        Path file = generatedFile;
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Benchmark
+    public long replay(Records records) throws InterruptedException {
+        long replayed = replayer.replay(this::deliver, speed);
+        records.records += replayed;
+        return replayed;
+    }
+
+    private void deliver(String address, BluetoothScanNotification notification) {
+        handlers.computeIfAbsent(address, a -> BTHomeBenchmarkPayloads.createHandler())
+                .onScanRecordReceived(notification);
+    }
+
+    /**
+     * Round robin over the devices, each sending its packet id, battery and temperature
+     */
+    private static void generateCapture(Path file) throws IOException {
+        BTHomeCaptureRecorder recorder = new BTHomeCaptureRecorder();
+        recorder.start(file);
+        long timestampMillis = System.currentTimeMillis();
+        for (int i = 0; i < RECORDS_PER_DEVICE; i++) {
+            for (int d = 0; d < DEVICES; d++) {
+                byte[] mac = { (byte) 0xA4, (byte) 0xC1, 0x38, 0, 0, (byte) d };
+                int temperature = 2000 + d + i;
+                byte[] serviceData = { 64, 0, (byte) i, 1, 100, 2, (byte) temperature, (byte) (temperature >> 8) };
+                recorder.record(timestampMillis, mac, -70 - d % 20, serviceData);
+                timestampMillis += RECORD_INTERVAL_MILLIS;
+            }
+        }
+        recorder.stop();
+    }
+}
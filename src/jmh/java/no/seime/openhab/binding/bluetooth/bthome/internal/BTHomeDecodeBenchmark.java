@@ -0,0 +1,55 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+import no.seime.openhab.binding.bluetooth.bthome.internal.datastructure.BthomeServiceData;
+
+/**
+ * Decoding a payload with the generated Kaitai parser, and with the allocation free decoder used by the handler.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-jmh.xml")
+@State(Scope.Thread)
+public class BTHomeDecodeBenchmark {
+
+    @Param({ BTHomeBenchmarkPayloads.B_PARASITE, BTHomeBenchmarkPayloads.MULTI_SENSOR })
+    public String payload;
+
+    private byte[] data = new byte[0];
+    private final BTHomePacket packet = new BTHomePacket();
+
+    @Setup
+    public void setup() {
+        data = BTHomeBenchmarkPayloads.get(payload);
+    }
+
+    @Benchmark
+    public BthomeServiceData kaitai() {
+        return new BthomeServiceData(new ByteBufferKaitaiStream(data));
+    }
+
+    @Benchmark
+    public int decoder() {
+        packet.clear();
+        BTHomeDecoder.decode(data, packet);
+        return packet.size();
+    }
+}
@@ -0,0 +1,77 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per packet cost of decrypting and decoding encrypted advertisements from many devices, each with its own bind key
+ * and cached cipher.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-jmh.xml")
+@State(Scope.Thread)
+public class BTHomeDecryptorBenchmark {
+
+    private static final int DEVICES = 500;
+    // Payloads per device, with increasing counters
+    private static final int COUNTERS = 64;
+
+    private final BTHomeDecryptor[] decryptors = new BTHomeDecryptor[DEVICES];
+    private final byte[][][] payloads = new byte[DEVICES][COUNTERS][];
+    private final BTHomePacket packet = new BTHomePacket();
+    private int device;
+    private int counter;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        byte[] measurements = TestUtils
+                .byteStringToByteArray("0, 1, 1, 100, 2, -54, 9, 3, -65, 19, 12, -10, 12, 69, -10, -1");
+        Random random = new Random(42);
+        for (int d = 0; d < DEVICES; d++) {
+            byte[] key = new byte[BTHomeDecryptor.KEY_LENGTH];
+            byte[] mac = new byte[BTHomeDecoder.MAC_LENGTH];
+            random.nextBytes(key);
+            random.nextBytes(mac);
+            decryptors[d] = new BTHomeDecryptor(key, mac);
+            for (int c = 0; c < COUNTERS; c++) {
+                payloads[d][c] = TestUtils.encrypt(key, mac, measurements, c + 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public int decryptAndDecode() throws GeneralSecurityException {
+        BTHomeDecryptor decryptor = decryptors[device];
+        if (counter == 0) {
+            // Start over, otherwise the counters are rejected as replayed
+            decryptor.reset();
+        }
+        int length = decryptor.decrypt(payloads[device][counter]);
+        packet.clear();
+        BTHomeDecoder.decodeMeasurements(decryptor.getPlaintext(), 0, length, packet);
+
+        // Round robin over the devices, as advertisements arrive from a fleet
+        if (++device == DEVICES) {
+            device = 0;
+            counter = (counter + 1) % COUNTERS;
+        }
+        return packet.size();
+    }
+}
@@ -0,0 +1,93 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The handler path of a packet: decoding, channel resolution and publication of every measurement.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlogback.configurationFile=src/jmh/resources/logback-jmh.xml")
+public class BTHomeHandlerBenchmark {
+
+    /**
+     * Handler with its channels created, as for every packet after the first
+     */
+    @State(Scope.Thread)
+    public static class KnownDevice {
+        @Param({ BTHomeBenchmarkPayloads.B_PARASITE, BTHomeBenchmarkPayloads.MULTI_SENSOR })
+        public String payload;
+
+        private byte[] data = new byte[0];
+        private BTHomeHandler handler;
+
+        @Setup
+        public void setup() {
+            data = BTHomeBenchmarkPayloads.get(payload);
+            handler = BTHomeBenchmarkPayloads.createHandler();
+            handler.processDataPacket(data);
+        }
+
+        @TearDown
+        public void tearDown() {
+            handler.dispose();
+        }
+    }
+
+    /**
+     * Handler of a thing without channels, as for the first packet of a device
+     */
+    @State(Scope.Thread)
+    public static class NewDevice {
+        @Param({ BTHomeBenchmarkPayloads.B_PARASITE, BTHomeBenchmarkPayloads.MULTI_SENSOR })
+        public String payload;
+
+        private byte[] data = new byte[0];
+        private BTHomeHandler handler;
+
+        @Setup(Level.Trial)
+        public void setupPayload() {
+            data = BTHomeBenchmarkPayloads.get(payload);
+        }
+
+        // Per invocation setup is fine here, creating the channels takes far longer than the setup overhead
+        @Setup(Level.Invocation)
+        public void setup() {
+            handler = BTHomeBenchmarkPayloads.createHandler();
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            handler.dispose();
+        }
+    }
+
+    @Benchmark
+    public void processDataPacket(KnownDevice device) {
+        device.handler.processDataPacket(device.data);
+    }
+
+    @Benchmark
+    public int createChannels(NewDevice device) {
+        device.handler.processDataPacket(device.data);
+        return device.handler.getThing().getChannels().size();
+    }
+}
@@ -0,0 +1,319 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.bluetooth.BluetoothAdapter;
+import org.openhab.binding.bluetooth.BluetoothAddress;
+import org.openhab.binding.bluetooth.BluetoothCharacteristic;
+import org.openhab.binding.bluetooth.BluetoothDescriptor;
+import org.openhab.binding.bluetooth.BluetoothDevice;
+import org.openhab.binding.bluetooth.BluetoothDeviceListener;
+import org.openhab.binding.bluetooth.notification.BluetoothConnectionStatusNotification;
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+import org.openhab.core.thing.ThingUID;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+
+/**
+ * Binding wide view of which Bluetooth adapters hear each device. For every registered MAC address, the tracker
+ * listens to the device on all adapters (roaming adapters excluded, they only forward copies of the others) and keeps
+ * the smoothed RSSI per adapter, so a thing can report the adapter that hears it best without processing every copy.
+ *
+ * Things on a roaming bridge receive the advertisement once per adapter in range. {@link Registration#isCopy} drops
+ * the copies by MAC address and payload within {@link #COPY_WINDOW_MILLIS}, also when the duplicate filter of the thing
+ * is disabled.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomeAdapterTracker.class)
+@NonNullByDefault
+public class BTHomeAdapterTracker {
+
+    static final long COPY_WINDOW_MILLIS = 1000;
+    // Adapters not hearing the device for this long are not considered
+    static final long STALE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // A new best adapter must be this much stronger, avoiding flapping between adapters of similar reach
+    static final double HYSTERESIS_DB = 3;
+
+    static final String ROAMING_THING_TYPE_ID = "roaming";
+
+    private static final double SMOOTHING = 0.2;
+    private static final long COPY_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(COPY_WINDOW_MILLIS);
+    private static final long STALE_NANOS = TimeUnit.MILLISECONDS.toNanos(STALE_MILLIS);
+
+    private final Set<BluetoothAdapter> adapters = new CopyOnWriteArraySet<>();
+    // By MAC address
+    private final Map<String, Signals> signals = new ConcurrentHashMap<>();
+
+    @Activate
+    public BTHomeAdapterTracker() {
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    protected void addBluetoothAdapter(BluetoothAdapter adapter) {
+        if (ROAMING_THING_TYPE_ID.equals(adapter.getUID().getThingTypeId())) {
+            return;
+        }
+        adapters.add(adapter);
+        signals.values().forEach(deviceSignals -> deviceSignals.listen(adapter));
+    }
+
+    protected void removeBluetoothAdapter(BluetoothAdapter adapter) {
+        if (adapters.remove(adapter)) {
+            signals.values().forEach(deviceSignals -> deviceSignals.stopListening(adapter));
+        }
+    }
+
+    /**
+     * Start tracking a device, until the registration is closed
+     *
+     * @param address MAC address, XX:XX:XX:XX:XX:XX
+     */
+    public Registration register(String address) {
+        String key = address.toUpperCase(Locale.ROOT);
+        Signals deviceSignals = signals.compute(key, (k, existing) -> {
+            Signals value = existing != null ? existing : new Signals(k);
+            value.registrations++;
+            return value;
+        });
+        adapters.forEach(deviceSignals::listen);
+        return new Registration(deviceSignals);
+    }
+
+    private void unregister(Signals deviceSignals) {
+        signals.computeIfPresent(deviceSignals.address, (k, existing) -> {
+            if (--existing.registrations > 0) {
+                return existing;
+            }
+            adapters.forEach(existing::stopListening);
+            return null;
+        });
+    }
+
+    /**
+     * Record a copy of an advertisement received by an adapter
+     */
+    void onCopy(String address, ThingUID adapterUID, int rssi, long nowNanos) {
+        Signals deviceSignals = signals.get(address.toUpperCase(Locale.ROOT));
+        if (deviceSignals != null && rssi != Integer.MIN_VALUE) {
+            deviceSignals.record(adapterUID, rssi, nowNanos);
+        }
+    }
+
+    /**
+     * Signals of one device on all adapters
+     */
+    private class Signals {
+        private final String address;
+        private final Map<ThingUID, AdapterSignal> byAdapter = new HashMap<>();
+        private final Map<BluetoothAdapter, Listener> listeners = new HashMap<>();
+        private int registrations;
+
+        private Signals(String address) {
+            this.address = address;
+        }
+
+        private synchronized void listen(BluetoothAdapter adapter) {
+            if (listeners.containsKey(adapter)) {
+                return;
+            }
+            BluetoothDevice device = adapter.getDevice(new BluetoothAddress(address));
+            Listener listener = new Listener(address, adapter.getUID(), device);
+            device.addListener(listener);
+            listeners.put(adapter, listener);
+        }
+
+        private synchronized void stopListening(BluetoothAdapter adapter) {
+            Listener listener = listeners.remove(adapter);
+            if (listener != null) {
+                listener.device.removeListener(listener);
+            }
+            byAdapter.remove(adapter.getUID());
+        }
+
+        private synchronized void record(ThingUID adapterUID, int rssi, long nowNanos) {
+            AdapterSignal signal = byAdapter.get(adapterUID);
+            if (signal == null || nowNanos - signal.lastHeardNanos > STALE_NANOS) {
+                byAdapter.put(adapterUID, new AdapterSignal(rssi, nowNanos));
+            } else {
+                signal.rssi += SMOOTHING * (rssi - signal.rssi);
+                signal.lastHeardNanos = nowNanos;
+            }
+        }
+
+        private synchronized @Nullable ThingUID best(@Nullable ThingUID current, long nowNanos) {
+            ThingUID best = null;
+            double bestRssi = Double.NEGATIVE_INFINITY;
+            for (Map.Entry<ThingUID, AdapterSignal> entry : byAdapter.entrySet()) {
+                AdapterSignal signal = entry.getValue();
+                if (nowNanos - signal.lastHeardNanos <= STALE_NANOS && signal.rssi > bestRssi) {
+                    best = entry.getKey();
+                    bestRssi = signal.rssi;
+                }
+            }
+            AdapterSignal currentSignal = current != null ? byAdapter.get(current) : null;
+            if (currentSignal != null && nowNanos - currentSignal.lastHeardNanos <= STALE_NANOS
+                    && bestRssi - currentSignal.rssi < HYSTERESIS_DB) {
+                return current;
+            }
+            return best;
+        }
+
+        private synchronized Map<ThingUID, Integer> rssiByAdapter(long nowNanos) {
+            Map<ThingUID, Integer> result = new HashMap<>();
+            byAdapter.forEach((adapterUID, signal) -> {
+                if (nowNanos - signal.lastHeardNanos <= STALE_NANOS) {
+                    result.put(adapterUID, (int) Math.round(signal.rssi));
+                }
+            });
+            return result;
+        }
+
+        /**
+         * @return true if an adapter started or stopped hearing the device, or its RSSI moved by more than
+         *         {@link #HYSTERESIS_DB}, compared to the given RSSI per adapter
+         */
+        private synchronized boolean movedFrom(Map<ThingUID, Integer> rssiByAdapter, long nowNanos) {
+            int heard = 0;
+            for (Map.Entry<ThingUID, AdapterSignal> entry : byAdapter.entrySet()) {
+                AdapterSignal signal = entry.getValue();
+                if (nowNanos - signal.lastHeardNanos > STALE_NANOS) {
+                    continue;
+                }
+                heard++;
+                Integer rssi = rssiByAdapter.get(entry.getKey());
+                if (rssi == null || Math.abs(signal.rssi - rssi) > HYSTERESIS_DB) {
+                    return true;
+                }
+            }
+            return heard != rssiByAdapter.size();
+        }
+    }
+
+    private static class AdapterSignal {
+        private double rssi;
+        private long lastHeardNanos;
+
+        private AdapterSignal(int rssi, long lastHeardNanos) {
+            this.rssi = rssi;
+            this.lastHeardNanos = lastHeardNanos;
+        }
+    }
+
+    /**
+     * Tracking of a device for one thing
+     */
+    public class Registration {
+        private final Signals deviceSignals;
+        private byte[] lastPayload = new byte[0];
+        private long lastAcceptedNanos;
+        private @Nullable ThingUID publishedBest;
+        private Map<ThingUID, Integer> publishedRssiByAdapter = Map.of();
+
+        private Registration(Signals deviceSignals) {
+            this.deviceSignals = deviceSignals;
+        }
+
+        /**
+         * @return true if the payload equals a payload accepted within {@link #COPY_WINDOW_MILLIS}. If not, it becomes
+         *         the payload new ones are compared against.
+         */
+        public synchronized boolean isCopy(byte[] payload, long nowNanos) {
+            if (nowNanos - lastAcceptedNanos < COPY_WINDOW_NANOS && Arrays.equals(payload, lastPayload)) {
+                return true;
+            }
+            lastPayload = payload;
+            lastAcceptedNanos = nowNanos;
+            return false;
+        }
+
+        /**
+         * @return the adapter hearing the device best, if it changed since last call, otherwise null
+         */
+        public synchronized @Nullable ThingUID takeChangedBestAdapter(long nowNanos) {
+            ThingUID best = deviceSignals.best(publishedBest, nowNanos);
+            if (best == null || best.equals(publishedBest)) {
+                return null;
+            }
+            publishedBest = best;
+            return best;
+        }
+
+        /**
+         * @return smoothed RSSI per adapter hearing the device, if an adapter was added or dropped or its RSSI moved by
+         *         more than {@link #HYSTERESIS_DB} since last call, otherwise null
+         */
+        public synchronized @Nullable Map<ThingUID, Integer> takeChangedRssiByAdapter(long nowNanos) {
+            if (!deviceSignals.movedFrom(publishedRssiByAdapter, nowNanos)) {
+                return null;
+            }
+            publishedRssiByAdapter = deviceSignals.rssiByAdapter(nowNanos);
+            return publishedRssiByAdapter;
+        }
+
+        public void close() {
+            unregister(deviceSignals);
+        }
+    }
+
+    private class Listener implements BluetoothDeviceListener {
+        private final String address;
+        private final ThingUID adapterUID;
+        private final BluetoothDevice device;
+
+        private Listener(String address, ThingUID adapterUID, BluetoothDevice device) {
+            this.address = address;
+            this.adapterUID = adapterUID;
+            this.device = device;
+        }
+
+        @Override
+        public void onScanRecordReceived(BluetoothScanNotification scanNotification) {
+            onCopy(address, adapterUID, scanNotification.getRssi(), System.nanoTime());
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothConnectionStatusNotification connectionNotification) {
+        }
+
+        @Override
+        public void onServicesDiscovered() {
+        }
+
+        @Override
+        public void onCharacteristicUpdate(BluetoothCharacteristic characteristic, byte[] value) {
+        }
+
+        @Override
+        public void onDescriptorUpdate(BluetoothDescriptor bluetoothDescriptor, byte[] value) {
+        }
+
+        @Override
+        public void onAdapterChanged(BluetoothAdapter adapter) {
+        }
+    }
+}
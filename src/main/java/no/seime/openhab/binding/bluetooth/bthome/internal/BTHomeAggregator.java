@@ -0,0 +1,240 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import javax.measure.Unit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per handler aggregation of numeric channel values over the window configured on the channel (see
+ * {@link BTHomeChannelConfiguration}), so devices advertising every second publish one state per window. The first
+ * value of a channel starts its first window, the following windows start where the previous one ended. A window is
+ * closed, and reduced to a single value, by {@link #flush} once its length has passed, or by the first value received
+ * after that, which then belongs to the next window. Channels without a window, and non-numeric states, are passed
+ * through.
+ *
+ * Counting values is only possible on channels without a unit, a count on a channel with a unit would be read in that
+ * unit.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeAggregator {
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeAggregator.class);
+
+    private final Map<ChannelUID, Window> windows = new HashMap<>();
+
+    /**
+     * Add a value to the window of the channel
+     *
+     * @param channel the channel, used to read the configuration the first time the channel is seen
+     * @return the state of a window closed by this value, to be published, or null if none was closed
+     */
+    public synchronized @Nullable State aggregate(ChannelUID channelUID, @Nullable Channel channel, State state,
+            long nowNanos) {
+        Window window = windows.get(channelUID);
+        if (window == null || window.stale) {
+            BTHomeChannelConfiguration config = channel != null
+                    ? channel.getConfiguration().as(BTHomeChannelConfiguration.class)
+                    : new BTHomeChannelConfiguration();
+            long lengthNanos = TimeUnit.SECONDS.toNanos(Math.max(0, config.aggregationWindowSeconds));
+            int reducer = reducer(config.aggregationReducer);
+            if (window == null || window.lengthNanos != lengthNanos || window.reducer != reducer) {
+                window = new Window(lengthNanos, reducer);
+                windows.put(channelUID, window);
+            }
+            window.stale = false;
+        }
+        if (window.lengthNanos == 0) {
+            return state;
+        }
+        double value;
+        @Nullable
+        Unit<?> unit = null;
+        if (state instanceof QuantityType<?> quantity) {
+            value = quantity.doubleValue();
+            unit = quantity.getUnit();
+        } else if (state instanceof DecimalType decimal) {
+            value = decimal.doubleValue();
+        } else {
+            return state;
+        }
+        if (window.reducer == Window.COUNT && unit != null && !Units.ONE.equals(unit)) {
+            if (!window.countRejected) {
+                window.countRejected = true;
+                logger.warn("Channel {} has a unit, values can't be counted. Publishing every value instead.",
+                        channelUID);
+            }
+            return state;
+        }
+        State closed = window.close(nowNanos);
+        if (window.count > 0 && !Objects.equals(unit, window.unit)) {
+            // Values of different units can't be combined, start over
+            window.reset();
+        }
+        window.add(value, unit, nowNanos);
+        return closed;
+    }
+
+    /**
+     * Close the windows whose length has passed
+     *
+     * @param all close all open windows, for instance when the handler is disposed
+     * @param publisher called with the channel and state of each closed window
+     */
+    public synchronized void flush(long nowNanos, boolean all, BiConsumer<ChannelUID, State> publisher) {
+        windows.forEach((channelUID, window) -> {
+            State closed = all ? window.closeNow() : window.close(nowNanos);
+            if (closed != null) {
+                publisher.accept(channelUID, closed);
+            }
+        });
+    }
+
+    /**
+     * Drop the values of all open windows, and stop counting, for instance when the channels are set to UNDEF
+     */
+    public synchronized void reset() {
+        windows.values().forEach(w -> {
+            w.reset();
+            w.started = false;
+        });
+    }
+
+    /**
+     * Read the configuration again on the next value, used when the channel configuration may have changed. Open
+     * windows are kept if their configuration did not change.
+     */
+    public synchronized void clear() {
+        windows.values().forEach(w -> w.stale = true);
+    }
+
+    private static int reducer(String name) {
+        return switch (name) {
+            case BTHomeChannelConfiguration.AGGREGATION_MIN -> Window.MIN;
+            case BTHomeChannelConfiguration.AGGREGATION_MAX -> Window.MAX;
+            case BTHomeChannelConfiguration.AGGREGATION_LAST -> Window.LAST;
+            case BTHomeChannelConfiguration.AGGREGATION_COUNT -> Window.COUNT;
+            default -> Window.MEAN;
+        };
+    }
+
+    private static class Window {
+        private static final int MEAN = 0;
+        private static final int MIN = 1;
+        private static final int MAX = 2;
+        private static final int LAST = 3;
+        private static final int COUNT = 4;
+
+        private final long lengthNanos;
+        private final int reducer;
+        private boolean stale;
+        private boolean countRejected;
+        // Set from the first value, windows then follow each other
+        private boolean started;
+
+        private int count;
+        private double sum;
+        private double min;
+        private double max;
+        private double last;
+        private long startNanos;
+        private @Nullable Unit<?> unit;
+
+        private Window(long lengthNanos, int reducer) {
+            this.lengthNanos = lengthNanos;
+            this.reducer = reducer;
+        }
+
+        private void add(double value, @Nullable Unit<?> valueUnit, long nowNanos) {
+            if (!started) {
+                started = true;
+                startNanos = nowNanos;
+            }
+            if (count == 0) {
+                unit = valueUnit;
+                min = value;
+                max = value;
+            } else {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            count++;
+            sum += value;
+            last = value;
+        }
+
+        /**
+         * @return the reduced state if the window has passed, otherwise null. Empty windows only give a state when
+         *         counting, other channels stop until the next value.
+         */
+        private @Nullable State close(long nowNanos) {
+            if (!started || nowNanos - startNanos < lengthNanos) {
+                return null;
+            }
+            // Windows without any tick in between, after a long pause, are skipped
+            startNanos += (nowNanos - startNanos) / lengthNanos * lengthNanos;
+            return closeNow();
+        }
+
+        private @Nullable State closeNow() {
+            if (!started) {
+                return null;
+            }
+            State reduced = count > 0 || reducer == COUNT ? reduce() : null;
+            if (count == 0 && reducer != COUNT) {
+                started = false;
+            }
+            reset();
+            return reduced;
+        }
+
+        private State reduce() {
+            if (reducer == COUNT) {
+                return new DecimalType(count);
+            }
+            double value = switch (reducer) {
+                case MIN -> min;
+                case MAX -> max;
+                case LAST -> last;
+                default -> sum / count;
+            };
+            @Nullable
+            Unit<?> localUnit = unit;
+            return localUnit != null ? new QuantityType<>(value, localUnit) : new DecimalType(value);
+        }
+
+        private void reset() {
+            count = 0;
+            sum = 0;
+            unit = null;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+/**
+ * Binding wide configuration, from the <code>binding.bthome</code> configuration pid.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+public class BTHomeBindingConfiguration {
+    public boolean sharedChannelTypes = false;
+    public int startupRampSeconds = 30;
+    public String captureFile = "";
+    public boolean metrics = false;
+    public String priorityChannels = "smoke,carbon-monoxide-detected,gas-detected,heat-detected,moisture-detected,"
+            + "safety,tamper";
+}
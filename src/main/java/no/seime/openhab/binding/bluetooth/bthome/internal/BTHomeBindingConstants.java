@@ -27,4 +27,20 @@ public class BTHomeBindingConstants {
     public static final ThingTypeUID THING_TYPE_DEVICE = new ThingTypeUID(BluetoothBindingConstants.BINDING_ID,
             "bthome");
     public static final String SERVICEDATA_UUID = "0000fcd2-0000-1000-8000-00805f9b34fb";
+
+    // Learned advertising interval, when adaptive offline detection is enabled
+    public static final String PROPERTY_ADVERTISING_INTERVAL = "advertisingInterval";
+
+    public static final String PROPERTY_DEVICE_TYPE = "deviceType";
+    public static final String PROPERTY_FIRMWARE_VERSION = "firmwareVersion";
+    // Set by discovery: channels expected from the advertisements seen, and whether they were encrypted
+    public static final String PROPERTY_CHANNELS = "channels";
+    public static final String PROPERTY_ENCRYPTED = "encrypted";
+    // Bluetooth adapter hearing the device with the strongest signal
+    public static final String PROPERTY_BEST_ADAPTER = "bestAdapter";
+    // Smoothed RSSI of every adapter hearing the device, updated with the best adapter
+    public static final String PROPERTY_ADAPTER_RSSI = "adapterRssi";
+
+    // Config description of dynamically created state channels
+    public static final String CHANNEL_CONFIG_DESCRIPTION_URI = "channel-type:bthome:state";
 }
@@ -0,0 +1,289 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.bluetooth.BluetoothAdapter;
+import org.openhab.binding.bluetooth.BluetoothCharacteristic;
+import org.openhab.binding.bluetooth.BluetoothDescriptor;
+import org.openhab.binding.bluetooth.BluetoothDevice;
+import org.openhab.binding.bluetooth.BluetoothDeviceListener;
+import org.openhab.binding.bluetooth.discovery.BluetoothDiscoveryListener;
+import org.openhab.binding.bluetooth.notification.BluetoothConnectionStatusNotification;
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+import org.openhab.core.OpenHAB;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends received BTHome advertisements to a capture file, which {@link BTHomeCaptureReplayer} plays back into
+ * handlers to reproduce a production load or an incident without radios. Recording is switched on and off at runtime
+ * through the <code>captureFile</code> binding setting.
+ *
+ * The recorder listens to every device seen by the Bluetooth adapters, roaming adapters excluded as they only forward
+ * copies of the others, so devices without a thing are recorded too. Each advertisement is recorded with the address
+ * of the device it was received from.
+ *
+ * The file starts with {@link #MAGIC} and {@link #FORMAT_VERSION}, followed by records prefixed with their length:
+ * receive time in epoch milliseconds (8 bytes), MAC address (6 bytes), RSSI (1 byte, {@link #RSSI_UNKNOWN} if not
+ * known), service data length (2 bytes) and the service data. Numbers are big endian.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomeCaptureRecorder.class)
+@NonNullByDefault
+public class BTHomeCaptureRecorder implements BluetoothDiscoveryListener {
+
+    static final int MAGIC = 0x42544843; // "BTHC"
+    static final int FORMAT_VERSION = 1;
+    static final byte RSSI_UNKNOWN = Byte.MIN_VALUE;
+    // Length of a record without the service data
+    static final int RECORD_HEADER_LENGTH = 8 + BTHomeDecoder.MAC_LENGTH + 1 + 2;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeCaptureRecorder.class);
+
+    private final Set<BluetoothAdapter> adapters = new CopyOnWriteArraySet<>();
+    private final Map<BluetoothDevice, DeviceRecorder> deviceRecorders = new ConcurrentHashMap<>();
+
+    private volatile @Nullable DataOutputStream output;
+    private @Nullable Path file;
+    private long lastFlushNanos;
+    private long recorded;
+
+    @Activate
+    public BTHomeCaptureRecorder() {
+    }
+
+    @Deactivate
+    public void deactivate() {
+        adapters.forEach(this::removeBluetoothAdapter);
+        stop();
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    protected void addBluetoothAdapter(BluetoothAdapter adapter) {
+        if (BTHomeAdapterTracker.ROAMING_THING_TYPE_ID.equals(adapter.getUID().getThingTypeId())) {
+            return;
+        }
+        adapters.add(adapter);
+        adapter.addDiscoveryListener(this);
+    }
+
+    protected void removeBluetoothAdapter(BluetoothAdapter adapter) {
+        if (!adapters.remove(adapter)) {
+            return;
+        }
+        adapter.removeDiscoveryListener(this);
+        deviceRecorders.entrySet().removeIf(entry -> {
+            if (entry.getKey().getAdapter().equals(adapter)) {
+                entry.getKey().removeListener(entry.getValue());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public void deviceDiscovered(BluetoothDevice device) {
+        String address = device.getAddress().toString();
+        byte[] mac;
+        try {
+            mac = BTHomeDecryptor.parseMac(address);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Invalid address {}, not recorded in captures", address);
+            return;
+        }
+        DeviceRecorder deviceRecorder = new DeviceRecorder(mac);
+        if (deviceRecorders.putIfAbsent(device, deviceRecorder) == null) {
+            device.addListener(deviceRecorder);
+        }
+    }
+
+    @Override
+    public void deviceRemoved(BluetoothDevice device) {
+        DeviceRecorder deviceRecorder = deviceRecorders.remove(device);
+        if (deviceRecorder != null) {
+            device.removeListener(deviceRecorder);
+        }
+    }
+
+    /**
+     * Start or stop recording according to the binding setting
+     *
+     * @param captureFile file to record to, relative to the bthome folder in userdata, or empty to stop recording
+     */
+    public synchronized void configure(@Nullable String captureFile) {
+        if (captureFile == null || captureFile.isBlank()) {
+            stop();
+            return;
+        }
+        Path path = Path.of(OpenHAB.getUserDataFolder(), "bthome").resolve(captureFile.trim());
+        if (path.equals(file)) {
+            return;
+        }
+        stop();
+        try {
+            start(path);
+        } catch (IOException e) {
+            logger.warn("Unable to record BTHome advertisements to {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Start recording, appending to the file if it exists
+     */
+    public synchronized void start(Path path) throws IOException {
+        stop();
+        Path parent = path.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        boolean isNew = !Files.exists(path) || Files.size(path) == 0;
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND), BUFFER_SIZE));
+        if (isNew) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+        }
+        file = path;
+        recorded = 0;
+        lastFlushNanos = System.nanoTime();
+        output = out;
+        logger.info("Recording BTHome advertisements to {}", path);
+    }
+
+    public synchronized void stop() {
+        DataOutputStream out = output;
+        if (out == null) {
+            return;
+        }
+        output = null;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.warn("Error closing BTHome capture file {}: {}", file, e.getMessage());
+        }
+        logger.info("Recorded {} BTHome advertisements to {}", recorded, file);
+        file = null;
+    }
+
+    public boolean isRecording() {
+        return output != null;
+    }
+
+    /**
+     * Append an advertisement, if recording
+     *
+     * @param rssi RSSI in dBm, or Integer.MIN_VALUE if not known
+     */
+    public void record(byte[] mac, int rssi, byte[] serviceData) {
+        record(System.currentTimeMillis(), mac, rssi, serviceData);
+    }
+
+    /**
+     * Append an advertisement received at the given time, if recording
+     */
+    void record(long timestampMillis, byte[] mac, int rssi, byte[] serviceData) {
+        if (output == null) {
+            return;
+        }
+        synchronized (this) {
+            DataOutputStream out = output;
+            if (out == null) {
+                return;
+            }
+            try {
+                out.writeInt(RECORD_HEADER_LENGTH + serviceData.length);
+                out.writeLong(timestampMillis);
+                out.write(mac, 0, BTHomeDecoder.MAC_LENGTH);
+                out.writeByte(rssi > RSSI_UNKNOWN && rssi <= Byte.MAX_VALUE ? rssi : RSSI_UNKNOWN);
+                out.writeShort(serviceData.length);
+                out.write(serviceData);
+                recorded++;
+                long now = System.nanoTime();
+                if (now - lastFlushNanos > FLUSH_INTERVAL_NANOS) {
+                    lastFlushNanos = now;
+                    out.flush();
+                }
+            } catch (IOException e) {
+                logger.warn("Error recording BTHome advertisement to {}, recording stopped: {}", file,
+                        e.getMessage());
+                stop();
+            }
+        }
+    }
+
+    /**
+     * Records the BTHome advertisements of a device, while recording
+     */
+    private class DeviceRecorder implements BluetoothDeviceListener {
+        private final byte[] mac;
+
+        private DeviceRecorder(byte[] mac) {
+            this.mac = mac;
+        }
+
+        @Override
+        public void onScanRecordReceived(BluetoothScanNotification scanNotification) {
+            if (output == null) {
+                return;
+            }
+            byte[] bthomeData = scanNotification.getServiceData().get(BTHomeBindingConstants.SERVICEDATA_UUID);
+            if (bthomeData != null) {
+                record(mac, scanNotification.getRssi(), bthomeData);
+            }
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothConnectionStatusNotification connectionNotification) {
+        }
+
+        @Override
+        public void onServicesDiscovered() {
+        }
+
+        @Override
+        public void onCharacteristicUpdate(BluetoothCharacteristic characteristic, byte[] value) {
+        }
+
+        @Override
+        public void onDescriptorUpdate(BluetoothDescriptor bluetoothDescriptor, byte[] value) {
+        }
+
+        @Override
+        public void onAdapterChanged(BluetoothAdapter adapter) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+
+/**
+ * Plays back a capture file written by {@link BTHomeCaptureRecorder}. The file is memory mapped, and every record
+ * becomes a {@link BluetoothScanNotification} carrying the BTHome service data, delivered with the MAC address of the
+ * device, for instance to {@link BTHomeHandler#onScanRecordReceived}.
+ *
+ * Playback keeps the recorded timing at 1x, compresses it at Nx, or runs as fast as possible at
+ * {@link #MAX_SPEED}.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeCaptureReplayer {
+
+    public static final double MAX_SPEED = 0;
+
+    private final MappedByteBuffer buffer;
+    private final int firstRecord;
+
+    public BTHomeCaptureReplayer(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != BTHomeCaptureRecorder.MAGIC) {
+                throw new IOException("Not a BTHome capture file: " + file);
+            }
+            int version = buffer.get();
+            if (version != BTHomeCaptureRecorder.FORMAT_VERSION) {
+                throw new IOException("Unsupported BTHome capture format " + version + ": " + file);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Not a BTHome capture file: " + file);
+        }
+        firstRecord = buffer.position();
+    }
+
+    /**
+     * Deliver the records to the target
+     *
+     * @param target receives the MAC address (XX:XX:XX:XX:XX:XX) and the scan notification of every record
+     * @param speed playback speed relative to the recording, {@link #MAX_SPEED} for no delays
+     * @return number of records delivered
+     */
+    public synchronized long replay(BiConsumer<String, BluetoothScanNotification> target, double speed)
+            throws InterruptedException {
+        buffer.position(firstRecord);
+        long count = 0;
+        long firstTimestamp = -1;
+        long startNanos = System.nanoTime();
+        Record record;
+        while ((record = next()) != null) {
+            if (speed > MAX_SPEED) {
+                if (firstTimestamp < 0) {
+                    firstTimestamp = record.timestampMillis;
+                }
+                long dueNanos = startNanos
+                        + (long) (TimeUnit.MILLISECONDS.toNanos(record.timestampMillis - firstTimestamp) / speed);
+                long delayNanos = dueNanos - System.nanoTime();
+                if (delayNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                }
+            }
+            BluetoothScanNotification notification = new BluetoothScanNotification();
+            if (record.rssi != BTHomeCaptureRecorder.RSSI_UNKNOWN) {
+                notification.setRssi(record.rssi);
+            }
+            notification.getServiceData().put(BTHomeBindingConstants.SERVICEDATA_UUID, record.serviceData);
+            target.accept(record.mac, notification);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the next record, or null at the end of the file or at a truncated record
+     */
+    private @Nullable Record next() {
+        if (buffer.remaining() < Integer.BYTES) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < BTHomeCaptureRecorder.RECORD_HEADER_LENGTH || buffer.remaining() < length) {
+            // Partly written, openHAB was stopped abruptly
+            buffer.position(buffer.limit());
+            return null;
+        }
+        int end = buffer.position() + length;
+        long timestampMillis = buffer.getLong();
+        StringBuilder mac = new StringBuilder(17);
+        for (int i = 0; i < BTHomeDecoder.MAC_LENGTH; i++) {
+            if (i > 0) {
+                mac.append(':');
+            }
+            mac.append(String.format("%02X", buffer.get()));
+        }
+        int rssi = buffer.get();
+        int serviceDataLength = Short.toUnsignedInt(buffer.getShort());
+        if (serviceDataLength > end - buffer.position()) {
+            buffer.position(buffer.limit());
+            return null;
+        }
+        byte[] serviceData = new byte[serviceDataLength];
+        buffer.get(serviceData);
+        buffer.position(end);
+        return new Record(timestampMillis, mac.toString(), rssi, serviceData);
+    }
+
+    private static class Record {
+        private final long timestampMillis;
+        private final String mac;
+        private final int rssi;
+        private final byte[] serviceData;
+
+        private Record(long timestampMillis, String mac, int rssi, byte[] serviceData) {
+            this.timestampMillis = timestampMillis;
+            this.mac = mac;
+            this.rssi = rssi;
+            this.serviceData = serviceData;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+/**
+ * Configuration of a dynamically created BTHome state channel.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+public class BTHomeChannelConfiguration {
+    public static final String PUBLISH_POLICY_ALWAYS = "always";
+    public static final String PUBLISH_POLICY_CHANGE = "change";
+
+    public static final String AGGREGATION_MEAN = "mean";
+    public static final String AGGREGATION_MIN = "min";
+    public static final String AGGREGATION_MAX = "max";
+    public static final String AGGREGATION_LAST = "last";
+    public static final String AGGREGATION_COUNT = "count";
+
+    public String publishPolicy = PUBLISH_POLICY_ALWAYS;
+    public double deadbandAbsolute = 0;
+    public double deadbandPercent = 0;
+    public int maxPublishIntervalSeconds = 0;
+    public int aggregationWindowSeconds = 0;
+    public String aggregationReducer = AGGREGATION_MEAN;
+}
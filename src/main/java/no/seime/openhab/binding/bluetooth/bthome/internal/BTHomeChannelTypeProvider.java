@@ -12,33 +12,281 @@
  */
 package no.seime.openhab.binding.bluetooth.bthome.internal;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.bluetooth.BluetoothBindingConstants;
+import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.storage.StorageService;
 import org.openhab.core.thing.ThingUID;
 import org.openhab.core.thing.binding.AbstractStorageBasedTypeProvider;
+import org.openhab.core.thing.type.ChannelKind;
 import org.openhab.core.thing.type.ChannelType;
+import org.openhab.core.thing.type.ChannelTypeBuilder;
 import org.openhab.core.thing.type.ChannelTypeProvider;
+import org.openhab.core.thing.type.ChannelTypeUID;
+import org.openhab.core.types.StateDescriptionFragmentBuilder;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Channel Type Provider that does a callback the SensiboSkyHandler that initiated it.
+ * Channel Type Provider for the dynamically created BTHome channels.
+ *
+ * Shared channel types, one per {@link BTHomeTypeMapping}, are built once and served from memory. Channel types
+ * created per thing (the original scheme) are kept in storage until the things using them are migrated.
+ *
+ * Stored channel types are loaded once into memory and indexed by the thing owning them, so looking up, adding or
+ * removing the channel types of a thing does not touch storage. Changes are written to storage in batches, a few
+ * seconds after the first change and when the provider is deactivated.
  *
  * @author Arne Seime - Initial contribution
  */
 @Component(service = { BTHomeChannelTypeProvider.class, ChannelTypeProvider.class })
 @NonNullByDefault
 public class BTHomeChannelTypeProvider extends AbstractStorageBasedTypeProvider {
+
+    private static final String CHANNEL_TYPE_PREFIX = "bthome-";
+    private static final long FLUSH_DELAY_SECONDS = 10;
+
+    private static final Map<ChannelTypeUID, ChannelType> SHARED_CHANNEL_TYPES = new HashMap<>();
+
+    static {
+        for (BTHomeTypeMapping typeMapping : BTHomeTypeMapping.values()) {
+            ChannelTypeUID channelTypeUID = sharedChannelTypeUID(typeMapping);
+            SHARED_CHANNEL_TYPES.put(channelTypeUID,
+                    buildChannelType(channelTypeUID, typeMapping.getChannelName(), typeMapping));
+        }
+        for (BTHomeDerivedRate derivedRate : BTHomeDerivedRate.values()) {
+            ChannelTypeUID channelTypeUID = sharedChannelTypeUID(derivedRate);
+            SHARED_CHANNEL_TYPES.put(channelTypeUID, buildChannelType(channelTypeUID, derivedRate));
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeChannelTypeProvider.class);
+
+    private final ScheduledExecutorService scheduler;
+
+    // Stored channel types, and their UIDs by id of the owning thing
+    private final Map<ChannelTypeUID, ChannelType> storedChannelTypes = new ConcurrentHashMap<>();
+    private final Map<String, Set<ChannelTypeUID>> channelTypesByThing = new HashMap<>();
+
+    // Changes not yet written to storage, an empty value is a removal
+    private final Map<ChannelTypeUID, Optional<ChannelType>> pendingWrites = new LinkedHashMap<>();
+    private @Nullable ScheduledFuture<?> flushJob;
+
     @Activate
     public BTHomeChannelTypeProvider(@Reference StorageService storageService) {
+        this(storageService, ThreadPoolManager.getScheduledPool(ThreadPoolManager.THREAD_POOL_NAME_COMMON));
+    }
+
+    BTHomeChannelTypeProvider(StorageService storageService, ScheduledExecutorService scheduler) {
         super(storageService);
+        this.scheduler = scheduler;
+        for (ChannelType channelType : super.getChannelTypes(null)) {
+            storedChannelTypes.put(channelType.getUID(), channelType);
+            index(channelType.getUID());
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        flush();
+    }
+
+    /**
+     * @return UID of the channel type shared by all channels of the type mapping
+     */
+    public static ChannelTypeUID sharedChannelTypeUID(BTHomeTypeMapping typeMapping) {
+        return new ChannelTypeUID(BluetoothBindingConstants.BINDING_ID,
+                CHANNEL_TYPE_PREFIX + typeMapping.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+    }
+
+    /**
+     * @return UID of the channel type of derived rate channels, derived channels always use shared channel types
+     */
+    public static ChannelTypeUID sharedChannelTypeUID(BTHomeDerivedRate derivedRate) {
+        return new ChannelTypeUID(BluetoothBindingConstants.BINDING_ID,
+                CHANNEL_TYPE_PREFIX + "derived-" + derivedRate.getChannelName());
+    }
+
+    /**
+     * @return UID of a channel type owned by a single thing
+     */
+    public static ChannelTypeUID thingChannelTypeUID(ThingUID thingUID, String channelName) {
+        return new ChannelTypeUID(BluetoothBindingConstants.BINDING_ID,
+                String.format("%s%s-%s", CHANNEL_TYPE_PREFIX, thingUID.getId(), channelName));
     }
 
-    public void removeChannelTypesForThing(ThingUID uid) {
+    /**
+     * @return the channel name if the channel type is owned by the thing, otherwise null
+     */
+    public static @Nullable String channelNameOfThingChannelType(ThingUID thingUID, ChannelTypeUID channelTypeUID) {
+        String prefix = CHANNEL_TYPE_PREFIX + thingUID.getId() + "-";
+        String id = channelTypeUID.getId();
+        if (BluetoothBindingConstants.BINDING_ID.equals(channelTypeUID.getBindingId()) && id.startsWith(prefix)) {
+            return id.substring(prefix.length());
+        }
+        return null;
+    }
+
+    /**
+     * @return id of the thing owning a channel type created by {@link #thingChannelTypeUID}, or null if not known
+     */
+    static @Nullable String thingIdOfThingChannelType(ChannelTypeUID channelTypeUID) {
+        String id = channelTypeUID.getId();
+        if (!BluetoothBindingConstants.BINDING_ID.equals(channelTypeUID.getBindingId())
+                || !id.startsWith(CHANNEL_TYPE_PREFIX) || SHARED_CHANNEL_TYPES.containsKey(channelTypeUID)) {
+            return null;
+        }
+        // Channel names contain dashes, so look for the longest known channel name at the end
+        String withoutCounter = id.replaceFirst("_\\d+$", "");
+        String channelName = null;
+        for (BTHomeTypeMapping typeMapping : BTHomeTypeMapping.values()) {
+            String name = typeMapping.getChannelName();
+            if (withoutCounter.endsWith("-" + name) && (channelName == null || name.length() > channelName.length())) {
+                channelName = name;
+            }
+        }
+        if (channelName == null) {
+            return null;
+        }
+        int end = withoutCounter.length() - channelName.length() - 1;
+        return end > CHANNEL_TYPE_PREFIX.length() ? id.substring(CHANNEL_TYPE_PREFIX.length(), end) : null;
+    }
+
+    static ChannelType buildChannelType(ChannelTypeUID channelTypeUID, String label, BTHomeTypeMapping typeMapping) {
+        final ChannelTypeBuilder<?> channelTypeBuilder;
+        if (typeMapping.getChannelKind() == ChannelKind.TRIGGER) {
+            channelTypeBuilder = ChannelTypeBuilder.trigger(channelTypeUID, label);
+        } else {
+            StateDescriptionFragmentBuilder stateDescription = StateDescriptionFragmentBuilder.create()
+                    .withReadOnly(true);
+            channelTypeBuilder = ChannelTypeBuilder.state(channelTypeUID, label, typeMapping.getItemType())
+                    .withStateDescriptionFragment(stateDescription.build())
+                    .withConfigDescriptionURI(URI.create(BTHomeBindingConstants.CHANNEL_CONFIG_DESCRIPTION_URI));
+        }
+
+        channelTypeBuilder.isAdvanced(typeMapping.isAdvanced());
+        channelTypeBuilder.withTags(Set.of("Property"));
+        if (typeMapping.getCategory() != null) {
+            channelTypeBuilder.withCategory(typeMapping.getCategory());
+        }
+        return channelTypeBuilder.build();
+    }
+
+    static ChannelType buildChannelType(ChannelTypeUID channelTypeUID, BTHomeDerivedRate derivedRate) {
+        return ChannelTypeBuilder.state(channelTypeUID, derivedRate.getChannelName(), derivedRate.getItemType())
+                .withStateDescriptionFragment(StateDescriptionFragmentBuilder.create().withReadOnly(true).build())
+                .withConfigDescriptionURI(URI.create(BTHomeBindingConstants.CHANNEL_CONFIG_DESCRIPTION_URI))
+                .withTags(Set.of("Property")).withCategory(derivedRate.getCategory()).build();
+    }
+
+    @Override
+    public @Nullable ChannelType getChannelType(ChannelTypeUID channelTypeUID, @Nullable Locale locale) {
+        ChannelType channelType = SHARED_CHANNEL_TYPES.get(channelTypeUID);
+        return channelType != null ? channelType : storedChannelTypes.get(channelTypeUID);
+    }
+
+    @Override
+    public Collection<ChannelType> getChannelTypes(@Nullable Locale locale) {
+        List<ChannelType> channelTypes = new ArrayList<>(SHARED_CHANNEL_TYPES.values());
+        channelTypes.addAll(storedChannelTypes.values());
+        return channelTypes;
+    }
+
+    @Override
+    public synchronized void putChannelType(ChannelType channelType) {
+        ChannelTypeUID channelTypeUID = channelType.getUID();
+        storedChannelTypes.put(channelTypeUID, channelType);
+        index(channelTypeUID);
+        pendingWrites.put(channelTypeUID, Optional.of(channelType));
+        scheduleFlush();
+    }
+
+    @Override
+    public synchronized void removeChannelType(ChannelTypeUID channelTypeUID) {
+        if (storedChannelTypes.remove(channelTypeUID) == null) {
+            return;
+        }
+        String thingId = thingIdOfThingChannelType(channelTypeUID);
+        Set<ChannelTypeUID> thingChannelTypes = thingId != null ? channelTypesByThing.get(thingId) : null;
+        if (thingChannelTypes != null) {
+            thingChannelTypes.remove(channelTypeUID);
+            if (thingChannelTypes.isEmpty()) {
+                channelTypesByThing.remove(thingId);
+            }
+        }
+        pendingWrites.put(channelTypeUID, Optional.empty());
+        scheduleFlush();
+    }
+
+    /**
+     * Remove the channel types owned by the thing
+     */
+    public synchronized void removeChannelTypesForThing(ThingUID uid) {
+        Set<ChannelTypeUID> thingChannelTypes = channelTypesByThing.remove(uid.getId());
+        if (thingChannelTypes == null) {
+            return;
+        }
+        for (ChannelTypeUID channelTypeUID : thingChannelTypes) {
+            storedChannelTypes.remove(channelTypeUID);
+            pendingWrites.put(channelTypeUID, Optional.empty());
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Write pending changes to storage
+     */
+    synchronized void flush() {
+        ScheduledFuture<?> localFlushJob = flushJob;
+        if (localFlushJob != null) {
+            localFlushJob.cancel(false);
+            flushJob = null;
+        }
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        logger.debug("Writing {} channel type changes to storage", pendingWrites.size());
+        pendingWrites.forEach((channelTypeUID, channelType) -> {
+            if (channelType.isPresent()) {
+                super.putChannelType(channelType.get());
+            } else {
+                super.removeChannelType(channelTypeUID);
+            }
+        });
+        pendingWrites.clear();
+    }
+
+    private void index(ChannelTypeUID channelTypeUID) {
+        String thingId = thingIdOfThingChannelType(channelTypeUID);
+        if (thingId != null) {
+            channelTypesByThing.computeIfAbsent(thingId, k -> new HashSet<>()).add(channelTypeUID);
+        }
+    }
 
-        String thingUid = uid.getId();
-        getChannelTypes(null).stream().map(ChannelType::getUID).filter(c -> c.getAsString().endsWith(thingUid))
-                .forEach(this::removeChannelType);
+    private void scheduleFlush() {
+        if (flushJob == null && !pendingWrites.isEmpty()) {
+            flushJob = scheduler.schedule(this::flush, FLUSH_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
     }
 }
@@ -5,6 +5,11 @@ import org.openhab.core.config.core.Configuration;
 public class BTHomeConfiguration extends Configuration {
     public String address;
     public int expectedReportingIntervalSeconds = 3600;
+    public boolean adaptiveOfflineDetection = false;
+    public int duplicateWindowMillis = 2000;
+    public int restoreMaxAgeSeconds = 7200;
+    public boolean derivedRateChannels = false;
+    public String bindKey;
 
     public BTHomeConfiguration(String address, int expectedReportingIntervalSeconds) {
         this.address = address;
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+
+import javax.measure.Unit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.type.ChannelKind;
+import org.openhab.core.types.State;
+import org.openhab.core.types.util.UnitUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import no.seime.openhab.binding.bluetooth.bthome.internal.datastructure.BthomeServiceData;
+
+/**
+ * Precompiled conversion from decoded measurements to openHAB states, indexed by BTHome object id. Units are resolved
+ * and state factories selected once when the class is loaded, so converting a measurement is a single array lookup.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public final class BTHomeConversionTable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BTHomeConversionTable.class);
+
+    private static final @Nullable Conversion[] CONVERSIONS = new Conversion[256];
+
+    static {
+        for (BTHomeTypeMapping typeMapping : BTHomeTypeMapping.values()) {
+            int objectId = typeMapping.getObjectId();
+            CONVERSIONS[objectId] = new Conversion(objectId, typeMapping, resolveUnit(objectId),
+                    BTHomeDecoder.scale(objectId), selectStateFactory(typeMapping));
+        }
+    }
+
+    private BTHomeConversionTable() {
+    }
+
+    /**
+     * @return the conversion for the object id, or null if the binding has no mapping for it
+     */
+    public static @Nullable Conversion get(int objectId) {
+        return CONVERSIONS[objectId & 0xFF];
+    }
+
+    private static @Nullable Unit<?> resolveUnit(int objectId) {
+        String unitString = BTHomeDecoder.unit(objectId);
+        if (unitString == null) {
+            return null;
+        }
+        Unit<?> unit = UnitUtils.parseUnit(unitString);
+        if (unit == null) {
+            LOGGER.warn("Unit '{}' unknown to openHAB, object id 0x{} will be reported as DecimalType", unitString,
+                    Integer.toHexString(objectId));
+        }
+        return unit;
+    }
+
+    private static StateFactory selectStateFactory(BTHomeTypeMapping typeMapping) {
+        int objectId = typeMapping.getObjectId();
+        if (typeMapping.getChannelKind() == ChannelKind.TRIGGER) {
+            return (conversion, packet, index) -> null;
+        } else if (BTHomeDecoder.isBoolean(objectId)) {
+            if ("Contact".equals(typeMapping.getItemType())) {
+                return (conversion, packet, index) -> isSet(packet, index) ? OpenClosedType.OPEN
+                        : OpenClosedType.CLOSED;
+            }
+            return (conversion, packet, index) -> isSet(packet, index) ? OnOffType.ON : OnOffType.OFF;
+        }
+        switch (objectId) {
+            case BTHomeDecoder.OBJECT_ID_TEXT:
+                return (conversion, packet, index) -> new StringType(packet.stringValue(index));
+            case BTHomeDecoder.OBJECT_ID_RAW:
+                return (conversion, packet, index) -> new StringType(
+                        Base64.getEncoder().encodeToString(packet.bytesValue(index)));
+            case BTHomeDecoder.OBJECT_ID_TIMESTAMP:
+                return (conversion, packet, index) -> new DateTimeType(ZonedDateTime
+                        .ofInstant(Instant.ofEpochSecond(packet.rawValue(index)), ZoneId.systemDefault()));
+            default:
+                return (conversion, packet, index) -> {
+                    Unit<?> unit = conversion.unit;
+                    Number value = conversion.value(packet.rawValue(index));
+                    if (unit != null) {
+                        return new QuantityType<>(value, unit);
+                    }
+                    return new DecimalType(value);
+                };
+        }
+    }
+
+    private static boolean isSet(BTHomePacket packet, int index) {
+        return (packet.rawValue(index) & 0x01) == 0x01;
+    }
+
+    @FunctionalInterface
+    interface StateFactory {
+        @Nullable
+        State create(Conversion conversion, BTHomePacket packet, int index);
+    }
+
+    /**
+     * Conversion of a single BTHome object id
+     */
+    public static final class Conversion {
+        private final int objectId;
+        private final BTHomeTypeMapping typeMapping;
+        private final @Nullable Unit<?> unit;
+        private final double scale;
+        private final StateFactory stateFactory;
+
+        private Conversion(int objectId, BTHomeTypeMapping typeMapping, @Nullable Unit<?> unit, double scale,
+                StateFactory stateFactory) {
+            this.objectId = objectId;
+            this.typeMapping = typeMapping;
+            this.unit = unit;
+            this.scale = scale;
+            this.stateFactory = stateFactory;
+        }
+
+        /**
+         * @return the state of the measurement, or null for trigger channels
+         */
+        public @Nullable State toState(BTHomePacket packet, int index) {
+            return stateFactory.create(this, packet, index);
+        }
+
+        /**
+         * @return the trigger event of an event measurement, or null for state channels
+         */
+        public @Nullable String toEvent(BTHomePacket packet, int index) {
+            long rawValue = packet.rawValue(index);
+            switch (objectId) {
+                case BTHomeDecoder.OBJECT_ID_EVENT_BUTTON: {
+                    BthomeServiceData.ButtonEventType event = BthomeServiceData.ButtonEventType.byId(rawValue);
+                    return event != null ? event.toString() : "UNKNOWN_" + rawValue;
+                }
+                case BTHomeDecoder.OBJECT_ID_EVENT_DIMMER: {
+                    long eventId = rawValue & 0xFF;
+                    long steps = (rawValue >> 8) & 0xFF;
+                    BthomeServiceData.DimmerEventType event = BthomeServiceData.DimmerEventType.byId(eventId);
+                    // Will trigger values NONE, ROTATE_LEFT_X, ROTATE_RIGHT_X where X is the number of steps
+                    return (event != null ? event.toString() : "UNKNOWN_" + eventId)
+                            + (steps > 0 ? "_" + steps : "");
+                }
+                default:
+                    return null;
+            }
+        }
+
+        /**
+         * @return the raw value if the object id is not scaled, otherwise the scaled value
+         */
+        public Number value(long rawValue) {
+            if (scale == 1) {
+                return rawValue;
+            }
+            return rawValue * scale;
+        }
+
+        public int getObjectId() {
+            return objectId;
+        }
+
+        public BTHomeTypeMapping getTypeMapping() {
+            return typeMapping;
+        }
+
+        public @Nullable Unit<?> getUnit() {
+            return unit;
+        }
+
+        public double getScale() {
+            return scale;
+        }
+    }
+}
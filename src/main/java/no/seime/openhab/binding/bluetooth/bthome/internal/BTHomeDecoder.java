@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+import no.seime.openhab.binding.bluetooth.bthome.internal.datastructure.BthomeServiceData;
+
+/**
+ * The {@link BTHomeDecoder} is a hand written decoder for BTHome V2 service data. It walks the raw payload with a
+ * cursor and reports every measurement to a {@link BTHomeMeasurementVisitor} without allocating. The object id table
+ * mirrors <code>bthome_v2.ksy</code>, and the generated {@link BthomeServiceData} parser is kept as the reference
+ * implementation.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public final class BTHomeDecoder {
+
+    public static final int FLAG_ENCRYPTION = 0x01;
+    public static final int FLAG_MAC_INCLUDED = 0x02;
+    public static final int FLAG_TRIGGER_BASED = 0x04;
+    public static final int BTHOME_VERSION_2 = 2;
+    public static final int MAC_LENGTH = 6;
+
+    // Object ids that need special treatment by the handler
+    public static final int OBJECT_ID_PACKET_ID = 0x00;
+    public static final int OBJECT_ID_EVENT_BUTTON = 0x3A;
+    public static final int OBJECT_ID_EVENT_DIMMER = 0x3C;
+    public static final int OBJECT_ID_TIMESTAMP = 0x50;
+    public static final int OBJECT_ID_TEXT = 0x53;
+    public static final int OBJECT_ID_RAW = 0x54;
+    public static final int OBJECT_ID_DEVICE_TYPE = 0xF0;
+    public static final int OBJECT_ID_FW_VERSION_UINT32 = 0xF1;
+    public static final int OBJECT_ID_FW_VERSION_UINT24 = 0xF2;
+
+    /** Object ids from this value and up are device properties rather than measurements */
+    public static final int FIRST_DEVICE_PROPERTY_OBJECT_ID = 0xF0;
+
+    private static final int UNKNOWN = 0;
+    private static final int VARIABLE_LENGTH = -1;
+
+    private static final int[] LENGTH = new int[256];
+    private static final boolean[] SIGNED = new boolean[256];
+    private static final boolean[] BOOLEAN = new boolean[256];
+    private static final double[] SCALE = new double[256];
+    private static final @Nullable String[] UNIT = new String[256];
+
+    static {
+        Arrays.fill(SCALE, 1);
+
+        define(0x00, 1, false, 1, null); // packet id
+        define(0x01, 1, false, 1, "%"); // battery
+        define(0x02, 2, true, 0.01, "\u00B0C"); // temperature
+        define(0x03, 2, false, 0.01, "%"); // humidity
+        define(0x04, 3, false, 0.01, "hPa"); // pressure
+        define(0x05, 3, false, 0.01, "lx"); // illuminance
+        define(0x06, 2, false, 0.01, "kg"); // mass
+        define(0x07, 2, false, 0.01, "lb"); // mass
+        define(0x08, 2, true, 0.01, "\u00B0C"); // dewpoint
+        define(0x09, 1, false, 1, null); // count
+        define(0x0A, 3, false, 0.001, "kWh"); // energy
+        define(0x0B, 3, false, 0.01, "W"); // power
+        define(0x0C, 2, false, 0.001, "V"); // voltage
+        define(0x0D, 2, false, 1, "\u00B5g/m\u00B3"); // pm2.5
+        define(0x0E, 2, false, 1, "\u00B5g/m\u00B3"); // pm10
+        defineBoolean(0x0F, 0x11);
+        define(0x12, 2, false, 1, "ppm"); // co2
+        define(0x13, 2, false, 1, "\u00B5g/m\u00B3"); // tvoc
+        define(0x14, 2, false, 0.01, "%"); // moisture
+        defineBoolean(0x15, 0x2D);
+        define(0x2E, 1, false, 1, "%"); // humidity
+        define(0x2F, 1, false, 1, "%"); // moisture
+        define(0x3A, 1, false, 1, null); // button event
+        define(0x3C, 2, false, 1, null); // dimmer event + steps
+        define(0x3D, 2, false, 1, null); // count
+        define(0x3E, 4, false, 1, null); // count
+        define(0x3F, 2, true, 0.1, "\u00B0"); // rotation
+        define(0x40, 2, false, 1, "mm"); // distance
+        define(0x41, 2, true, 0.1, "m"); // distance
+        define(0x42, 3, false, 0.001, "s"); // duration
+        define(0x43, 2, false, 0.001, "A"); // current
+        define(0x44, 2, false, 0.01, "m/s"); // speed
+        define(0x45, 2, true, 0.1, "\u00B0C"); // temperature
+        define(0x46, 1, false, 0.1, null); // uv index
+        define(0x47, 2, false, 0.1, "L"); // volume
+        define(0x48, 2, false, 1, "mL"); // volume
+        define(0x49, 2, false, 0.001, "m\u00B3/hr"); // volume flow rate
+        define(0x4A, 2, false, 0.1, "V"); // voltage
+        define(0x4B, 3, false, 0.001, "m\u00B3"); // gas
+        define(0x4C, 4, false, 0.001, "m\u00B3"); // gas
+        define(0x4D, 4, false, 0.001, "kWh"); // energy
+        define(0x4E, 4, false, 0.001, "L"); // volume
+        define(0x4F, 4, false, 0.001, "L"); // water
+        define(0x50, 4, false, 1, null); // timestamp
+        define(0x51, 2, false, 0.001, "m/s\u00B2"); // acceleration
+        define(0x52, 2, false, 0.001, "\u00B0/s"); // gyroscope
+        LENGTH[0x53] = VARIABLE_LENGTH; // text
+        LENGTH[0x54] = VARIABLE_LENGTH; // raw
+        define(0x55, 4, false, 0.001, "L"); // volume storage
+        define(0xF0, 2, false, 1, null); // device type
+        define(0xF1, 4, false, 1, null); // firmware version build.patch.minor.major
+        define(0xF2, 3, false, 1, null); // firmware version patch.minor.major
+    }
+
+    private BTHomeDecoder() {
+    }
+
+    private static void define(int objectId, int length, boolean signed, double scale, @Nullable String unit) {
+        LENGTH[objectId] = length;
+        SIGNED[objectId] = signed;
+        SCALE[objectId] = scale;
+        UNIT[objectId] = unit;
+    }
+
+    private static void defineBoolean(int firstObjectId, int lastObjectId) {
+        for (int objectId = firstObjectId; objectId <= lastObjectId; objectId++) {
+            LENGTH[objectId] = 1;
+            BOOLEAN[objectId] = true;
+        }
+    }
+
+    /**
+     * Decode a complete service data payload (the bytes following the BTHome service UUID). Measurements are only
+     * reported for unencrypted V2 payloads.
+     *
+     * @return the device information byte, see {@link #isEncrypted(int)} and friends
+     * @throws IllegalArgumentException if the payload is truncated
+     */
+    public static int decode(byte[] data, BTHomeMeasurementVisitor visitor) {
+        if (data.length == 0) {
+            throw new IllegalArgumentException("Empty BTHome payload");
+        }
+        int deviceInformation = data[0] & 0xFF;
+        int offset = measurementOffset(deviceInformation);
+        if (offset > data.length) {
+            throw new IllegalArgumentException("BTHome payload too short to contain MAC address");
+        }
+        if (version(deviceInformation) == BTHOME_VERSION_2 && !isEncrypted(deviceInformation)) {
+            decodeMeasurements(data, offset, data.length, visitor);
+        }
+        return deviceInformation;
+    }
+
+    /**
+     * Decode the measurement section of a payload, from <code>offset</code> (inclusive) to <code>end</code>
+     * (exclusive). Decoding stops silently at the first unknown object id, as its length cannot be known.
+     *
+     * @return number of measurements reported to the visitor
+     * @throws IllegalArgumentException if a measurement is truncated
+     */
+    public static int decodeMeasurements(byte[] data, int offset, int end, BTHomeMeasurementVisitor visitor) {
+        int pos = offset;
+        int count = 0;
+        while (pos < end) {
+            int objectId = data[pos++] & 0xFF;
+            int length = LENGTH[objectId];
+            if (length == UNKNOWN) {
+                return count;
+            } else if (length == VARIABLE_LENGTH) {
+                requireAvailable(objectId, pos, 1, end);
+                int valueLength = data[pos++] & 0xFF;
+                requireAvailable(objectId, pos, valueLength, end);
+                visitor.onBytes(objectId, data, pos, valueLength);
+                pos += valueLength;
+            } else {
+                requireAvailable(objectId, pos, length, end);
+                long rawValue = 0;
+                for (int i = length - 1; i >= 0; i--) {
+                    rawValue = (rawValue << 8) | (data[pos + i] & 0xFF);
+                }
+                if (SIGNED[objectId]) {
+                    int shift = 64 - length * 8;
+                    rawValue = (rawValue << shift) >> shift;
+                }
+                visitor.onMeasurement(objectId, rawValue, SCALE[objectId]);
+                pos += length;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Check the object ids of an unencrypted V2 payload without decoding the values. The check stops at the first
+     * unknown object id.
+     *
+     * @param objectIds flags indexed by object id
+     * @return true if a measurement has a flagged object id, always false for encrypted payloads
+     */
+    public static boolean containsObjectId(byte[] data, boolean[] objectIds) {
+        if (data.length == 0) {
+            return false;
+        }
+        int deviceInformation = data[0] & 0xFF;
+        if (isEncrypted(deviceInformation) || version(deviceInformation) != BTHOME_VERSION_2) {
+            return false;
+        }
+        int pos = measurementOffset(deviceInformation);
+        while (pos < data.length) {
+            int objectId = data[pos++] & 0xFF;
+            if (objectIds[objectId]) {
+                return true;
+            }
+            int length = LENGTH[objectId];
+            if (length == UNKNOWN) {
+                return false;
+            } else if (length == VARIABLE_LENGTH) {
+                if (pos >= data.length) {
+                    return false;
+                }
+                length = data[pos++] & 0xFF;
+            }
+            pos += length;
+        }
+        return false;
+    }
+
+    private static void requireAvailable(int objectId, int pos, int length, int end) {
+        if (pos + length > end) {
+            throw new IllegalArgumentException(String.format(
+                    "Truncated BTHome measurement for object id 0x%02X: need %d bytes, %d available", objectId,
+                    length, end - pos));
+        }
+    }
+
+    public static int measurementOffset(int deviceInformation) {
+        return (deviceInformation & FLAG_MAC_INCLUDED) != 0 ? 1 + MAC_LENGTH : 1;
+    }
+
+    public static boolean isEncrypted(int deviceInformation) {
+        return (deviceInformation & FLAG_ENCRYPTION) != 0;
+    }
+
+    public static boolean isTriggerBased(int deviceInformation) {
+        return (deviceInformation & FLAG_TRIGGER_BASED) != 0;
+    }
+
+    public static int version(int deviceInformation) {
+        return (deviceInformation >> 5) & 0x07;
+    }
+
+    /**
+     * @return number of value bytes for a fixed size object id, 0 for unknown and variable length object ids
+     */
+    public static int fixedLength(int objectId) {
+        return Math.max(LENGTH[objectId], 0);
+    }
+
+    public static boolean isKnown(int objectId) {
+        return LENGTH[objectId] != UNKNOWN;
+    }
+
+    public static boolean isBoolean(int objectId) {
+        return BOOLEAN[objectId];
+    }
+
+    public static boolean isSigned(int objectId) {
+        return SIGNED[objectId];
+    }
+
+    public static double scale(int objectId) {
+        return SCALE[objectId];
+    }
+
+    /**
+     * @return the unit of the object id as given by the BTHome specification, or null if it is dimensionless
+     */
+    public static @Nullable String unit(int objectId) {
+        return UNIT[objectId];
+    }
+}
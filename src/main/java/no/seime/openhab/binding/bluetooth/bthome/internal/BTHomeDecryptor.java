@@ -0,0 +1,201 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Decrypts encrypted BTHome V2 payloads (AES-CCM with a 4 byte MIC, see https://bthome.io/encryption/).
+ *
+ * The JDK has no CCM mode, so CCM is built on a single AES block cipher that is initialised once per handler. The
+ * nonce, counter blocks and plaintext are kept in reused buffers, so decrypting a packet does not allocate.
+ *
+ * Packets whose counter is not strictly larger than the last authenticated counter are rejected as replays, which also
+ * drops the repeated copies of an advertisement before they are decoded.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeDecryptor {
+
+    public static final int KEY_LENGTH = 16;
+    public static final int COUNTER_LENGTH = 4;
+    public static final int MIC_LENGTH = 4;
+
+    /** Returned by {@link #decrypt(byte[])} for packets with an old counter */
+    public static final int REPLAYED = -1;
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int NONCE_LENGTH = 13;
+    // CCM flags: no associated data, M = 4 (MIC length), L = 2 (length field size)
+    private static final int FLAGS_B0 = ((MIC_LENGTH - 2) / 2) << 3 | (15 - NONCE_LENGTH - 1);
+    private static final int FLAGS_A = 15 - NONCE_LENGTH - 1;
+
+    private final Cipher cipher;
+    private final byte[] defaultMac;
+
+    private final byte[] nonce = new byte[NONCE_LENGTH];
+    private final byte[] counterBlock = new byte[BLOCK_SIZE];
+    private final byte[] keyStream = new byte[BLOCK_SIZE];
+    private final byte[] macBlock = new byte[BLOCK_SIZE];
+    private byte[] plaintext = new byte[32];
+
+    private long lastCounter = -1;
+
+    /**
+     * @param key 16 byte bind key of the device
+     * @param defaultMac device address in transmission order, used when the payload does not include the MAC
+     */
+    public BTHomeDecryptor(byte[] key, byte[] defaultMac) throws GeneralSecurityException {
+        if (key.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Bind key must be " + KEY_LENGTH + " bytes, was " + key.length);
+        }
+        if (defaultMac.length != BTHomeDecoder.MAC_LENGTH) {
+            throw new IllegalArgumentException("MAC address must be " + BTHomeDecoder.MAC_LENGTH + " bytes");
+        }
+        cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        this.defaultMac = defaultMac.clone();
+    }
+
+    /**
+     * Parse a bind key as 32 hex digits
+     */
+    public static byte[] parseKey(String bindKey) {
+        byte[] key = HexFormat.of().parseHex(bindKey.trim());
+        if (key.length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Bind key must be " + KEY_LENGTH * 2 + " hex digits");
+        }
+        return key;
+    }
+
+    /**
+     * Parse a Bluetooth address in the format <code>XX:XX:XX:XX:XX:XX</code>
+     */
+    public static byte[] parseMac(String address) {
+        byte[] mac = HexFormat.ofDelimiter(":").parseHex(address.trim());
+        if (mac.length != BTHomeDecoder.MAC_LENGTH) {
+            throw new IllegalArgumentException("Invalid Bluetooth address " + address);
+        }
+        return mac;
+    }
+
+    /**
+     * Forget the last counter, accepting any counter on the next packet
+     */
+    public synchronized void reset() {
+        lastCounter = -1;
+    }
+
+    /**
+     * Decrypt and authenticate an encrypted payload. The plaintext measurements are available from
+     * {@link #getPlaintext()} until the next call.
+     *
+     * @return length of the plaintext, or {@link #REPLAYED} if the counter is not newer than the last accepted one
+     * @throws GeneralSecurityException if the MIC does not match, typically because of a wrong bind key
+     * @throws IllegalArgumentException if the payload is too short
+     */
+    public synchronized int decrypt(byte[] payload) throws GeneralSecurityException {
+        int deviceInformation = payload[0] & 0xFF;
+        int start = BTHomeDecoder.measurementOffset(deviceInformation);
+        int counterOffset = payload.length - MIC_LENGTH - COUNTER_LENGTH;
+        int micOffset = payload.length - MIC_LENGTH;
+        if (counterOffset < start) {
+            throw new IllegalArgumentException("Encrypted BTHome payload too short");
+        }
+
+        long counter = (payload[counterOffset] & 0xFFL) | (payload[counterOffset + 1] & 0xFFL) << 8
+                | (payload[counterOffset + 2] & 0xFFL) << 16 | (payload[counterOffset + 3] & 0xFFL) << 24;
+        if (counter <= lastCounter) {
+            return REPLAYED;
+        }
+
+        // Nonce: MAC (6) | UUID (2) | device information (1) | counter (4)
+        if ((deviceInformation & BTHomeDecoder.FLAG_MAC_INCLUDED) != 0) {
+            // Included MAC is sent in reverse order
+            for (int i = 0; i < BTHomeDecoder.MAC_LENGTH; i++) {
+                nonce[i] = payload[BTHomeDecoder.MAC_LENGTH - i];
+            }
+        } else {
+            System.arraycopy(defaultMac, 0, nonce, 0, BTHomeDecoder.MAC_LENGTH);
+        }
+        nonce[6] = (byte) 0xD2;
+        nonce[7] = (byte) 0xFC;
+        nonce[8] = (byte) deviceInformation;
+        System.arraycopy(payload, counterOffset, nonce, 9, COUNTER_LENGTH);
+
+        int length = counterOffset - start;
+        if (plaintext.length < length) {
+            plaintext = new byte[length];
+        }
+
+        // CTR decryption, counter blocks A1..An
+        counterBlock[0] = (byte) FLAGS_A;
+        System.arraycopy(nonce, 0, counterBlock, 1, NONCE_LENGTH);
+        for (int block = 0; block * BLOCK_SIZE < length; block++) {
+            setBlockCounter(block + 1);
+            cipher.update(counterBlock, 0, BLOCK_SIZE, keyStream, 0);
+            int offset = block * BLOCK_SIZE;
+            int n = Math.min(BLOCK_SIZE, length - offset);
+            for (int i = 0; i < n; i++) {
+                plaintext[offset + i] = (byte) (payload[start + offset + i] ^ keyStream[i]);
+            }
+        }
+
+        // CBC-MAC over B0 and the zero padded plaintext
+        macBlock[0] = (byte) FLAGS_B0;
+        System.arraycopy(nonce, 0, macBlock, 1, NONCE_LENGTH);
+        macBlock[14] = (byte) (length >> 8);
+        macBlock[15] = (byte) length;
+        cipher.update(macBlock, 0, BLOCK_SIZE, macBlock, 0);
+        for (int offset = 0; offset < length; offset += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, length - offset);
+            for (int i = 0; i < n; i++) {
+                macBlock[i] ^= plaintext[offset + i];
+            }
+            cipher.update(macBlock, 0, BLOCK_SIZE, macBlock, 0);
+        }
+
+        // MIC = T xor S0
+        setBlockCounter(0);
+        cipher.update(counterBlock, 0, BLOCK_SIZE, keyStream, 0);
+        int difference = 0;
+        for (int i = 0; i < MIC_LENGTH; i++) {
+            difference |= (macBlock[i] ^ keyStream[i] ^ payload[micOffset + i]);
+        }
+        if (difference != 0) {
+            throw new GeneralSecurityException("BTHome payload failed authentication, check the bind key");
+        }
+
+        lastCounter = counter;
+        return length;
+    }
+
+    /**
+     * @return buffer holding the plaintext of the last successful {@link #decrypt(byte[])}
+     */
+    public byte[] getPlaintext() {
+        return plaintext;
+    }
+
+    private void setBlockCounter(int i) {
+        counterBlock[14] = (byte) (i >> 8);
+        counterBlock[15] = (byte) i;
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import javax.measure.Unit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.unit.Units;
+
+/**
+ * Rate channels derived from cumulative measurements, such as power from an energy meter. Each derived channel is
+ * named after its source channel, <code>energy_1</code> gives <code>energy-rate_1</code>.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public enum BTHomeDerivedRate {
+    ENERGY_RATE("energy-rate", "Number:Power", "energy", Units.WATT, BTHomeTypeMapping.ENERGY_SMALL,
+            BTHomeTypeMapping.ENERGY_LARGE),
+    GAS_FLOW("gas-flow", "Number:VolumetricFlowRate", "gas", Units.CUBICMETRE_PER_HOUR, BTHomeTypeMapping.GAS,
+            BTHomeTypeMapping.GAS_LARGE),
+    WATER_FLOW("water-flow", "Number:VolumetricFlowRate", "water", Units.LITRE_PER_MINUTE, BTHomeTypeMapping.WATER),
+    VOLUME_FLOW("volume-flow", "Number:VolumetricFlowRate", "sewerage", Units.LITRE_PER_MINUTE,
+            BTHomeTypeMapping.VOLUME_0, BTHomeTypeMapping.VOLUME_1, BTHomeTypeMapping.VOLUME_2),
+    // Counts per minute, counts have no unit
+    COUNT_RATE("count-rate", "Number", "text", null, BTHomeTypeMapping.COUNT_SMALL, BTHomeTypeMapping.COUNT_MEDIUM,
+            BTHomeTypeMapping.COUNT_LARGE);
+
+    private static final @Nullable BTHomeDerivedRate[] BY_OBJECT_ID = new BTHomeDerivedRate[256];
+
+    static {
+        for (BTHomeDerivedRate derivedRate : values()) {
+            for (BTHomeTypeMapping source : derivedRate.sources) {
+                BY_OBJECT_ID[source.getObjectId()] = derivedRate;
+            }
+        }
+    }
+
+    private final String channelName;
+    private final String itemType;
+    private final String category;
+    private final @Nullable Unit<?> unit;
+    private final BTHomeTypeMapping[] sources;
+
+    BTHomeDerivedRate(String channelName, String itemType, String category, @Nullable Unit<?> unit,
+            BTHomeTypeMapping... sources) {
+        this.channelName = channelName;
+        this.itemType = itemType;
+        this.category = category;
+        this.unit = unit;
+        this.sources = sources;
+    }
+
+    /**
+     * @return the rate derived from measurements of the object id, or null if not cumulative
+     */
+    public static @Nullable BTHomeDerivedRate fromObjectId(int objectId) {
+        return BY_OBJECT_ID[objectId & 0xFF];
+    }
+
+    /**
+     * @return id of the derived channel of a source channel
+     */
+    public String channelId(String sourceChannelId) {
+        // Repeated measurements have a _1, _2 suffix
+        int counter = sourceChannelId.lastIndexOf('_');
+        return counter >= 0 ? channelName + sourceChannelId.substring(counter) : channelName;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public String getItemType() {
+        return itemType;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * @return unit the rate is published in, or null for counts per minute
+     */
+    public @Nullable Unit<?> getUnit() {
+        return unit;
+    }
+}
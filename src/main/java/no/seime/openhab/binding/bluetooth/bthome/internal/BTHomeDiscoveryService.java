@@ -0,0 +1,425 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.binding.bluetooth.BluetoothAdapter;
+import org.openhab.binding.bluetooth.BluetoothBindingConstants;
+import org.openhab.binding.bluetooth.BluetoothCharacteristic;
+import org.openhab.binding.bluetooth.BluetoothDescriptor;
+import org.openhab.binding.bluetooth.BluetoothDevice;
+import org.openhab.binding.bluetooth.BluetoothDeviceListener;
+import org.openhab.binding.bluetooth.discovery.BluetoothDiscoveryListener;
+import org.openhab.binding.bluetooth.notification.BluetoothConnectionStatusNotification;
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+import org.openhab.core.config.discovery.AbstractDiscoveryService;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.config.discovery.DiscoveryResultBuilder;
+import org.openhab.core.config.discovery.DiscoveryService;
+import org.openhab.core.thing.ThingUID;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Discovers BTHome devices by listening to the advertisements of all devices seen by the Bluetooth adapters, as the
+ * discovery participants of the Bluetooth binding are not given the service data.
+ *
+ * Every device known to an adapter gets a listener, until the adapter removes the device. Only devices sending BTHome
+ * service data enter the cache: the last BTHome advertisement of each device is kept in an LRU cache bounded by
+ * {@link #MAX_DEVICES}, and dropped (with its inbox entry) when not heard from for {@link #EXPIRY_MILLIS}, so other
+ * BLE devices in range don't push BTHome devices out of the inbox. Advertisements only update the cache;
+ * results are sent to the inbox by a periodic flush, at most {@link #MAX_RESULTS_PER_FLUSH} at a time, and for each
+ * device only when something changed and not more often than every {@link #REPUBLISH_INTERVAL_MILLIS}.
+ *
+ * Results carry the device type, firmware version and the channels expected from the measurements seen, which the
+ * handler creates when the thing is initialized.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+@Component(service = DiscoveryService.class, configurationPid = "discovery.bthome")
+public class BTHomeDiscoveryService extends AbstractDiscoveryService implements BluetoothDiscoveryListener {
+
+    static final int MAX_DEVICES = 1024;
+    static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    static final long REPUBLISH_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Advertisements of a known device are decoded at most this often
+    static final long DECODE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    static final int MAX_RESULTS_PER_FLUSH = 20;
+
+    private static final int DISCOVERY_TIMEOUT_SECONDS = 10;
+    private static final int FLUSH_INTERVAL_SECONDS = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeDiscoveryService.class);
+
+    // Removed from the cache, inbox entries still to be removed
+    private final List<Advertisement> evicted = new ArrayList<>();
+    // By MAC address, in access order
+    private final LinkedHashMap<String, Advertisement> advertisements = new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.@Nullable Entry<String, Advertisement> eldest) {
+            if (eldest != null && size() > MAX_DEVICES) {
+                evicted.add(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+    // By MAC address, all devices seen by the adapters
+    private final Map<String, DeviceListener> listeners = new HashMap<>();
+    private final BTHomePacket packet = new BTHomePacket();
+    private final Set<BluetoothAdapter> adapters = new CopyOnWriteArraySet<>();
+
+    private @Nullable ScheduledFuture<?> flushTask;
+
+    public BTHomeDiscoveryService() {
+        super(Set.of(BTHomeBindingConstants.THING_TYPE_DEVICE), DISCOVERY_TIMEOUT_SECONDS, true);
+    }
+
+    @Override
+    @Activate
+    protected void activate(@Nullable Map<String, Object> configProperties) {
+        super.activate(configProperties);
+        flushTask = scheduler.scheduleWithFixedDelay(() -> flush(System.currentTimeMillis()),
+                FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    @Modified
+    protected void modified(@Nullable Map<String, Object> configProperties) {
+        super.modified(configProperties);
+    }
+
+    @Override
+    @Deactivate
+    protected void deactivate() {
+        ScheduledFuture<?> task = flushTask;
+        if (task != null) {
+            task.cancel(false);
+            flushTask = null;
+        }
+        adapters.forEach(this::removeBluetoothAdapter);
+        super.deactivate();
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    protected void addBluetoothAdapter(BluetoothAdapter adapter) {
+        adapters.add(adapter);
+        adapter.addDiscoveryListener(this);
+    }
+
+    protected void removeBluetoothAdapter(BluetoothAdapter adapter) {
+        adapters.remove(adapter);
+        adapter.removeDiscoveryListener(this);
+        Set<String> unreachable = new HashSet<>();
+        synchronized (listeners) {
+            listeners.values().removeIf(listener -> {
+                listener.devices.removeIf(device -> {
+                    if (device.getAdapter().equals(adapter)) {
+                        device.removeListener(listener);
+                        return true;
+                    }
+                    return false;
+                });
+                if (listener.devices.isEmpty()) {
+                    unreachable.add(listener.address);
+                    return true;
+                }
+                return false;
+            });
+        }
+        List<Advertisement> removed = new ArrayList<>();
+        synchronized (advertisements) {
+            advertisements.values().removeIf(advertisement -> {
+                if (unreachable.contains(advertisement.address)) {
+                    removed.add(advertisement);
+                    return true;
+                }
+                return false;
+            });
+        }
+        removed.forEach(this::removeResult);
+    }
+
+    @Override
+    public void deviceDiscovered(BluetoothDevice device) {
+        String address = device.getAddress().toString();
+        synchronized (listeners) {
+            DeviceListener listener = listeners.get(address);
+            if (listener == null) {
+                listener = new DeviceListener(address);
+                listeners.put(address, listener);
+            }
+            if (!listener.devices.contains(device)) {
+                listener.devices.add(device);
+                device.addListener(listener);
+            }
+        }
+    }
+
+    @Override
+    public void deviceRemoved(BluetoothDevice device) {
+        String address = device.getAddress().toString();
+        synchronized (listeners) {
+            DeviceListener listener = listeners.get(address);
+            if (listener != null && listener.devices.remove(device)) {
+                device.removeListener(listener);
+                if (listener.devices.isEmpty()) {
+                    listeners.remove(address);
+                }
+            }
+        }
+        // The advertisement is kept until expired, the device may come back
+    }
+
+    @Override
+    protected void startScan() {
+        // All devices heard from, changed or not
+        publish(System.currentTimeMillis(), true);
+    }
+
+    /**
+     * Update the cache with an advertisement of a device, called for every advertisement with BTHome service data
+     */
+    void onAdvertisement(String address, ThingUID adapterUID, @Nullable String name, byte[] serviceData,
+            long nowMillis) {
+        synchronized (advertisements) {
+            Advertisement advertisement = advertisements.get(address);
+            if (advertisement == null) {
+                advertisement = new Advertisement(address);
+                advertisements.put(address, advertisement);
+            }
+            advertisement.lastSeenMillis = nowMillis;
+            if (advertisement.adapterUID == null) {
+                advertisement.adapterUID = adapterUID;
+            }
+            if (name != null && !name.isBlank()) {
+                advertisement.name = name;
+            }
+            if (nowMillis - advertisement.lastDecodedMillis < DECODE_INTERVAL_MILLIS
+                    || Arrays.equals(serviceData, advertisement.serviceData)) {
+                return;
+            }
+            advertisement.serviceData = serviceData;
+            advertisement.lastDecodedMillis = nowMillis;
+            decode(advertisement);
+        }
+        removeEvicted();
+    }
+
+    private void decode(Advertisement advertisement) {
+        Map<String, String> properties = new HashMap<>();
+        try {
+            packet.clear();
+            int deviceInformation = BTHomeDecoder.decode(advertisement.serviceData, packet);
+            if (BTHomeDecoder.isEncrypted(deviceInformation)) {
+                // Measurements are only known once the bind key is configured
+                properties.put(BTHomeBindingConstants.PROPERTY_ENCRYPTED, Boolean.TRUE.toString());
+            } else {
+                properties.putAll(BTHomeHandler.parseDeviceProperties(packet));
+                List<String> channelIds = BTHomeHandler.channelIds(packet);
+                if (!channelIds.isEmpty()) {
+                    properties.put(BTHomeBindingConstants.PROPERTY_CHANNELS, String.join(",", channelIds));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring invalid BTHome data from {}: {}", advertisement.address, e.getMessage());
+            return;
+        }
+        // Channels of trigger based devices depend on the event, keep those seen before
+        String previousChannels = advertisement.properties.get(BTHomeBindingConstants.PROPERTY_CHANNELS);
+        String channels = properties.get(BTHomeBindingConstants.PROPERTY_CHANNELS);
+        if (previousChannels != null && (channels == null || channels.length() < previousChannels.length())) {
+            properties.put(BTHomeBindingConstants.PROPERTY_CHANNELS, previousChannels);
+        }
+        if (!properties.equals(advertisement.properties)) {
+            advertisement.properties = properties;
+            advertisement.changed = true;
+        }
+    }
+
+    /**
+     * Remove expired devices and send changed devices to the inbox
+     */
+    void flush(long nowMillis) {
+        List<Advertisement> expired = new ArrayList<>();
+        synchronized (advertisements) {
+            Iterator<Advertisement> iterator = advertisements.values().iterator();
+            while (iterator.hasNext()) {
+                Advertisement advertisement = iterator.next();
+                if (nowMillis - advertisement.lastSeenMillis > EXPIRY_MILLIS) {
+                    iterator.remove();
+                    expired.add(advertisement);
+                }
+            }
+        }
+        expired.forEach(this::removeResult);
+        removeEvicted();
+        if (isBackgroundDiscoveryEnabled()) {
+            publish(nowMillis, false);
+        }
+    }
+
+    private void publish(long nowMillis, boolean all) {
+        List<DiscoveryResult> results = new ArrayList<>();
+        synchronized (advertisements) {
+            for (Advertisement advertisement : advertisements.values()) {
+                if (!all && results.size() >= MAX_RESULTS_PER_FLUSH) {
+                    break;
+                }
+                if (advertisement.serviceData.length == 0 || advertisement.properties.isEmpty()) {
+                    continue;
+                }
+                if (all || (advertisement.changed
+                        && nowMillis - advertisement.lastPublishedMillis >= REPUBLISH_INTERVAL_MILLIS)) {
+                    DiscoveryResult result = createResult(advertisement);
+                    if (result != null) {
+                        results.add(result);
+                        advertisement.changed = false;
+                        advertisement.published = true;
+                        advertisement.lastPublishedMillis = nowMillis;
+                    }
+                }
+            }
+        }
+        results.forEach(this::thingDiscovered);
+    }
+
+    private @Nullable DiscoveryResult createResult(Advertisement advertisement) {
+        ThingUID thingUID = advertisement.thingUID();
+        ThingUID adapterUID = advertisement.adapterUID;
+        if (thingUID == null || adapterUID == null) {
+            return null;
+        }
+        Map<String, Object> properties = new HashMap<>(advertisement.properties);
+        properties.put(BluetoothBindingConstants.CONFIGURATION_ADDRESS, advertisement.address);
+        String name = advertisement.name;
+        String label = name == null ? "BTHome Device " + advertisement.address : name + " (BTHome)";
+        return DiscoveryResultBuilder.create(thingUID).withProperties(properties)
+                .withRepresentationProperty(BluetoothBindingConstants.CONFIGURATION_ADDRESS).withBridge(adapterUID)
+                .withLabel(label).build();
+    }
+
+    private void removeResult(Advertisement advertisement) {
+        ThingUID thingUID = advertisement.thingUID();
+        if (advertisement.published && thingUID != null) {
+            thingRemoved(thingUID);
+        }
+    }
+
+    private void removeEvicted() {
+        List<Advertisement> toRemove;
+        synchronized (advertisements) {
+            if (evicted.isEmpty()) {
+                return;
+            }
+            toRemove = new ArrayList<>(evicted);
+            evicted.clear();
+        }
+        toRemove.forEach(this::removeResult);
+    }
+
+    /**
+     * Last BTHome advertisement of a device
+     */
+    private static class Advertisement {
+        private final String address;
+        private @Nullable ThingUID adapterUID;
+        private @Nullable String name;
+        private byte[] serviceData = new byte[0];
+        private Map<String, String> properties = Map.of();
+        private long lastSeenMillis = System.currentTimeMillis();
+        private long lastDecodedMillis = Long.MIN_VALUE / 2;
+        private long lastPublishedMillis = Long.MIN_VALUE / 2;
+        private boolean changed;
+        private boolean published;
+
+        private Advertisement(String address) {
+            this.address = address;
+        }
+
+        private @Nullable ThingUID thingUID() {
+            ThingUID localAdapterUID = adapterUID;
+            return localAdapterUID == null ? null
+                    : new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, localAdapterUID,
+                            address.toLowerCase().replace(":", ""));
+        }
+    }
+
+    /**
+     * Listens to all advertisements of a device, and passes those with BTHome service data on to the cache
+     */
+    private class DeviceListener implements BluetoothDeviceListener {
+        private final String address;
+        // Same device seen by several adapters
+        private final List<BluetoothDevice> devices = new CopyOnWriteArrayList<>();
+
+        private DeviceListener(String address) {
+            this.address = address;
+        }
+
+        @Override
+        public void onScanRecordReceived(BluetoothScanNotification scanNotification) {
+            byte[] bthomeData = scanNotification.getServiceData().get(BTHomeBindingConstants.SERVICEDATA_UUID);
+            BluetoothDevice device = devices.isEmpty() ? null : devices.get(0);
+            if (bthomeData != null && device != null) {
+                onAdvertisement(address, device.getAdapter().getUID(), scanNotification.getDeviceName(), bthomeData,
+                        System.currentTimeMillis());
+            }
+        }
+
+        @Override
+        public void onConnectionStateChange(BluetoothConnectionStatusNotification connectionNotification) {
+        }
+
+        @Override
+        public void onServicesDiscovered() {
+        }
+
+        @Override
+        public void onCharacteristicUpdate(BluetoothCharacteristic characteristic, byte[] value) {
+        }
+
+        @Override
+        public void onDescriptorUpdate(BluetoothDescriptor bluetoothDescriptor, byte[] value) {
+        }
+
+        @Override
+        public void onAdapterChanged(BluetoothAdapter adapter) {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Drops repeated advertisements before they are decoded. BLE devices repeat each advertisement several times, and
+ * every proxy in range forwards its own copy.
+ *
+ * A payload is a duplicate if its packet id (peeked directly from the raw bytes when it is the first measurement)
+ * equals the previous one, or if its bytes are identical to the previous payload within the configured window.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeDuplicateFilter {
+
+    private long windowNanos;
+
+    private byte[] lastPayload = new byte[32];
+    private int lastLength = -1;
+    private long lastAcceptedNanos;
+    private int lastPacketId = -1;
+
+    private volatile long suppressedCount;
+
+    public synchronized void configure(long windowMillis) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        reset();
+    }
+
+    public synchronized void reset() {
+        lastLength = -1;
+        lastPacketId = -1;
+    }
+
+    /**
+     * @return true if the payload should be dropped. If not, it becomes the payload new ones are compared against.
+     */
+    public synchronized boolean isDuplicate(byte[] payload, long nowNanos) {
+        int packetId = peekPacketId(payload);
+        if (packetId >= 0 && packetId == lastPacketId) {
+            suppressedCount++;
+            return true;
+        }
+        if (packetId < 0 && windowNanos > 0 && payload.length == lastLength
+                && nowNanos - lastAcceptedNanos < windowNanos
+                && Arrays.equals(payload, 0, payload.length, lastPayload, 0, lastLength)) {
+            suppressedCount++;
+            return true;
+        }
+
+        if (lastPayload.length < payload.length) {
+            lastPayload = new byte[payload.length];
+        }
+        System.arraycopy(payload, 0, lastPayload, 0, payload.length);
+        lastLength = payload.length;
+        lastAcceptedNanos = nowNanos;
+        lastPacketId = packetId;
+        return false;
+    }
+
+    /**
+     * @return the packet id if it is the first measurement of an unencrypted payload, otherwise -1
+     */
+    static int peekPacketId(byte[] payload) {
+        if (payload.length == 0) {
+            return -1;
+        }
+        int deviceInformation = payload[0] & 0xFF;
+        if (BTHomeDecoder.isEncrypted(deviceInformation)
+                || BTHomeDecoder.version(deviceInformation) != BTHomeDecoder.BTHOME_VERSION_2) {
+            return -1;
+        }
+        int offset = BTHomeDecoder.measurementOffset(deviceInformation);
+        if (payload.length < offset + 2 || payload[offset] != BTHomeDecoder.OBJECT_ID_PACKET_ID) {
+            return -1;
+        }
+        return payload[offset + 1] & 0xFF;
+    }
+
+    /**
+     * @return number of payloads dropped as duplicates since the handler was created
+     */
+    public long getSuppressedCount() {
+        return suppressedCount;
+    }
+}
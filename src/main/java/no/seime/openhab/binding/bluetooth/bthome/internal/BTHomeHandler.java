@@ -12,36 +12,27 @@
  */
 package no.seime.openhab.binding.bluetooth.bthome.internal;
 
-import static java.util.stream.Collectors.groupingBy;
-
+import java.security.GeneralSecurityException;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 
-import javax.measure.Unit;
-
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.binding.bluetooth.BeaconBluetoothHandler;
 import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
-import org.openhab.core.library.types.*;
 import org.openhab.core.thing.*;
 import org.openhab.core.thing.binding.builder.ChannelBuilder;
 import org.openhab.core.thing.type.ChannelKind;
 import org.openhab.core.thing.type.ChannelType;
-import org.openhab.core.thing.type.ChannelTypeBuilder;
 import org.openhab.core.thing.type.ChannelTypeUID;
 import org.openhab.core.types.*;
-import org.openhab.core.types.util.UnitUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.kaitai.struct.ByteBufferKaitaiStream;
 import no.seime.openhab.binding.bluetooth.bthome.internal.datastructure.BthomeServiceData;
 
 /**
@@ -53,92 +44,376 @@ import no.seime.openhab.binding.bluetooth.bthome.internal.datastructure.BthomeSe
 @NonNullByDefault
 public class BTHomeHandler extends BeaconBluetoothHandler {
 
+    // Property only changes are collected for this long before the thing is updated
+    private static final long THING_MUTATIONS_DELAY_SECONDS = 5;
+    // Repeated advertisements are rejected a few times in a row, this many points at a restarted counter
+    static final int REPLAYED_STATUS_THRESHOLD = 20;
+
     private final Logger logger = LoggerFactory.getLogger(BTHomeHandler.class);
-    private final AtomicBoolean receivedStatus = new AtomicBoolean();
     private final BTHomeChannelTypeProvider dynamicChannelTypeProvider;
-
-    private @NonNullByDefault({}) ScheduledFuture<?> watchDogFuture;
-
-    private int lastPacketId = -1;
-    private long heartbeatDelay = 3600;
-    private byte[] cachedBthomeData = new byte[0];
-    private boolean isDisposed = false;
-
-    public BTHomeHandler(Thing thing, BTHomeChannelTypeProvider dynamicChannelTypeProvider) {
+    private final BTHomeIngestionPipeline ingestionPipeline;
+    private final BTHomeWatchdog watchdog;
+    private final BTHomeBindingConfiguration bindingConfiguration;
+    private final BTHomePayloadStore payloadStore;
+    private final BTHomeStartupThrottle startupThrottle;
+    private final BTHomeMetrics metrics;
+    private final BTHomeAdapterTracker adapterTracker;
+
+    private volatile BTHomeWatchdog.@Nullable Registration watchdogRegistration;
+    private final BTHomeIntervalEstimator intervalEstimator = new BTHomeIntervalEstimator();
+    private volatile boolean adaptiveOfflineDetection;
+    private volatile long configuredTimeoutNanos;
+
+    private final BTHomePacketIdWindow packetIdWindow = new BTHomePacketIdWindow();
+    private final BTHomePacket packet = new BTHomePacket();
+    private final BTHomeLayoutCache layoutCache = new BTHomeLayoutCache();
+    private final BTHomeDuplicateFilter duplicateFilter = new BTHomeDuplicateFilter();
+    private final BTHomePublicationCache publicationCache = new BTHomePublicationCache();
+    private final BTHomeAggregator aggregator = new BTHomeAggregator();
+    // Closes aggregation windows on the watchdog tick, registered once a window is opened
+    private final LongConsumer aggregationTick = this::closeAggregationWindows;
+    private volatile boolean aggregationTickRegistered;
+    private final BTHomeRateTracker rateTracker = new BTHomeRateTracker();
+    private volatile boolean derivedRateChannels;
+    private final BTHomeThingMutations thingMutations = new BTHomeThingMutations();
+    // Set while a stored payload is processed, guarded by packet
+    private boolean restoring;
+    private @Nullable ScheduledFuture<?> thingMutationsFlush;
+    private @Nullable BTHomeDecryptor decryptor;
+    // Encrypted payloads rejected for an old counter since the last accepted one, guarded by packet
+    private int replayedInRow;
+    private volatile BTHomeIngestionPipeline.@Nullable Lane ingestionLane;
+    // Channels of the thing by channel id, replaced whenever the thing is updated
+    private volatile Map<String, Channel> channelsById = Map.of();
+    private volatile boolean isDisposed = false;
+    private volatile BTHomeMetrics.DeviceMetrics deviceMetrics = BTHomeMetrics.DeviceMetrics.NONE;
+    private volatile BTHomeAdapterTracker.@Nullable Registration adapterRegistration;
+    // A roaming bridge forwards a copy of each advertisement from every adapter in range
+    private boolean roamingBridge;
+    // Events and configured safety alarms, by object id, dispatched ahead of routine measurements
+    private final boolean[] priorityObjectIds;
+    // Set once the device has sent a priority measurement, its encrypted payloads then skip the routine queue
+    private volatile boolean sendsPriorityMeasurements;
+
+    public BTHomeHandler(Thing thing, BTHomeChannelTypeProvider dynamicChannelTypeProvider,
+            BTHomeIngestionPipeline ingestionPipeline, BTHomeWatchdog watchdog,
+            BTHomeBindingConfiguration bindingConfiguration, BTHomePayloadStore payloadStore,
+            BTHomeStartupThrottle startupThrottle, BTHomeMetrics metrics, BTHomeAdapterTracker adapterTracker) {
         super(thing);
         this.dynamicChannelTypeProvider = dynamicChannelTypeProvider;
+        this.ingestionPipeline = ingestionPipeline;
+        this.watchdog = watchdog;
+        this.bindingConfiguration = bindingConfiguration;
+        this.payloadStore = payloadStore;
+        this.startupThrottle = startupThrottle;
+        this.metrics = metrics;
+        this.adapterTracker = adapterTracker;
+        this.priorityObjectIds = priorityObjectIds(bindingConfiguration.priorityChannels);
+    }
+
+    /**
+     * @param channelNames comma separated channel names of the state channels to dispatch with the trigger channels
+     */
+    static boolean[] priorityObjectIds(String channelNames) {
+        boolean[] priority = new boolean[256];
+        for (BTHomeTypeMapping typeMapping : BTHomeTypeMapping.values()) {
+            if (typeMapping.getChannelKind() == ChannelKind.TRIGGER) {
+                priority[typeMapping.getObjectId()] = true;
+            }
+        }
+        for (String channelName : channelNames.split(",")) {
+            String trimmed = channelName.trim();
+            // Mappings differing in resolution only share a channel name, all of them are marked
+            for (BTHomeTypeMapping typeMapping : BTHomeTypeMapping.values()) {
+                if (typeMapping.getChannelName().equals(trimmed)) {
+                    priority[typeMapping.getObjectId()] = true;
+                }
+            }
+        }
+        return priority;
     }
 
     @Override
     public void initialize() {
         logger.info("[{}] Initializing BTHomeHandler", getThing().getUID());
+        // The handler is initialized again after dispose when the configuration changes
+        isDisposed = false;
         super.initialize();
+        if (bindingConfiguration.sharedChannelTypes) {
+            migrateToSharedChannelTypes();
+        }
+        rebuildChannelIndex();
+        createExpectedChannels();
+        String address = getConfig().as(BTHomeConfiguration.class).address;
+        ingestionLane = ingestionPipeline.createLane(address, this::processReceivedData);
+        deviceMetrics.close();
+        deviceMetrics = metrics.register(getThing().getUID(), getThing().getBridgeUID());
+        closeAdapterRegistration();
+        adapterRegistration = adapterTracker.register(address);
+        ThingUID bridgeUID = getThing().getBridgeUID();
+        roamingBridge = bridgeUID != null
+                && BTHomeAdapterTracker.ROAMING_THING_TYPE_ID.equals(bridgeUID.getThingTypeId());
 
         initInternal();
+        restoreLastPayload();
+    }
+
+    /**
+     * Create the channels discovery expects, so they can be linked before the device has been heard from
+     */
+    private void createExpectedChannels() {
+        String expected = getThing().getProperties().get(BTHomeBindingConstants.PROPERTY_CHANNELS);
+        if (expected == null || expected.isBlank()) {
+            return;
+        }
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (String channelId : expected.split(",")) {
+            // Channel ids of repeated measurements have a _1, _2 suffix
+            counts.merge(channelId.trim().replaceFirst("_\\d+$", ""), 1, Integer::sum);
+        }
+        List<Channel> channels = new ArrayList<>();
+        counts.forEach((channelName, count) -> {
+            BTHomeTypeMapping match = null;
+            int matches = 0;
+            for (BTHomeTypeMapping typeMapping : BTHomeTypeMapping.values()) {
+                if (typeMapping.getChannelName().equals(channelName)) {
+                    match = typeMapping;
+                    matches++;
+                }
+            }
+            // Mappings differing in resolution only share a channel name and build the same channel type owned by the
+            // thing, but each has a shared channel type of its own. The first packet tells which one the device uses.
+            if (match != null && (matches == 1 || !bindingConfiguration.sharedChannelTypes)) {
+                channels.addAll(getOrCreateChannels(match, count));
+            }
+        });
+        if (!channels.isEmpty()) {
+            thingMutations.addChannels(channels);
+            applyThingMutations();
+        }
+    }
+
+    private void closeAdapterRegistration() {
+        BTHomeAdapterTracker.Registration localAdapterRegistration = adapterRegistration;
+        if (localAdapterRegistration != null) {
+            localAdapterRegistration.close();
+            adapterRegistration = null;
+        }
+    }
+
+    /**
+     * @return adapters hearing the device with their smoothed RSSI, strongest first
+     */
+    static String formatRssiByAdapter(Map<ThingUID, Integer> rssiByAdapter) {
+        return rssiByAdapter.entrySet().stream()
+                .sorted(Map.Entry.<ThingUID, Integer> comparingByValue().reversed())
+                .map(entry -> entry.getKey().getAsString() + "=" + entry.getValue()).collect(Collectors.joining(","));
     }
 
     private void initInternal() {
+        layoutCache.clear();
+        publicationCache.clear();
+        synchronized (packet) {
+            packetIdWindow.reset();
+            replayedInRow = 0;
+        }
+        aggregator.clear();
         updateStatus(ThingStatus.UNKNOWN, ThingStatusDetail.NONE, "Waiting for device to wake up.");
-        setChannelsToUndef();
         BTHomeConfiguration config = getConfig().as(BTHomeConfiguration.class);
-        heartbeatDelay = (long) (config.expectedReportingIntervalSeconds * 1.1);
-        watchDogFuture = scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatDelay, heartbeatDelay,
-                TimeUnit.SECONDS);
+        duplicateFilter.configure(config.duplicateWindowMillis);
+        decryptor = createDecryptor(config);
+        // A 10% grace period is added to the expected reporting interval
+        configuredTimeoutNanos = (long) (TimeUnit.SECONDS.toNanos(config.expectedReportingIntervalSeconds) * 1.1);
+        adaptiveOfflineDetection = config.adaptiveOfflineDetection;
+        derivedRateChannels = config.derivedRateChannels;
+        rateTracker.clear();
+        intervalEstimator.reset();
+        // Spread over the startup ramp together with the other things
+        startupThrottle.submit(getThing().getUID().getAsString(), this::startWatching);
     }
 
-    private void heartbeat() {
-        synchronized (receivedStatus) {
-            if (!receivedStatus.getAndSet(false) && getThing().getStatus() == ThingStatus.ONLINE) {
-                setChannelsToUndef();
-                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
-                        "No data received for some time");
+    private void startWatching() {
+        if (isDisposed) {
+            return;
+        }
+        cancelWatchdog();
+        watchdogRegistration = watchdog.register(getThing().getUID().getAsString(), configuredTimeoutNanos,
+                this::onWatchdogExpired);
+        // Channels restored or updated in the meantime keep their state
+        setChannelsToUndef(true);
+    }
+
+    /**
+     * Restore the channels from the last payload received, also before a restart. Triggers are not fired and the
+     * thing stays UNKNOWN until the device is heard again.
+     */
+    private void restoreLastPayload() {
+        int maxAgeSeconds = getConfig().as(BTHomeConfiguration.class).restoreMaxAgeSeconds;
+        if (maxAgeSeconds <= 0) {
+            return;
+        }
+        BTHomePayloadStore.Payload payload = payloadStore.get(getThing().getUID().getAsString(),
+                TimeUnit.SECONDS.toMillis(maxAgeSeconds), System.currentTimeMillis());
+        if (payload == null) {
+            return;
+        }
+        logger.debug("[{}] Restoring last BTHome data received at {}", getThing().getUID(),
+                Instant.ofEpochMilli(payload.getReceivedEpochMillis()));
+        synchronized (packet) {
+            restoring = true;
+            try {
+                processDataPacket(payload.getData());
+            } finally {
+                restoring = false;
+                // The device repeats its last advertisement, which must bring the thing online
+                packetIdWindow.reset();
+                BTHomeDecryptor localDecryptor = decryptor;
+                if (localDecryptor != null) {
+                    localDecryptor.reset();
+                }
             }
         }
     }
 
+    private @Nullable BTHomeDecryptor createDecryptor(BTHomeConfiguration config) {
+        String bindKey = config.bindKey;
+        if (bindKey == null || bindKey.isBlank()) {
+            return null;
+        }
+        try {
+            return new BTHomeDecryptor(BTHomeDecryptor.parseKey(bindKey), BTHomeDecryptor.parseMac(config.address));
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            logger.warn("[{}] Unable to use bind key: {}", getThing().getUID(), e.getMessage());
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                    "Invalid bind key, expected 32 hex digits: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void onWatchdogExpired() {
+        flushAggregationWindows();
+        // The device may have restarted its packet id and encryption counter while away
+        synchronized (packet) {
+            packetIdWindow.reset();
+            BTHomeDecryptor localDecryptor = decryptor;
+            if (localDecryptor != null) {
+                localDecryptor.reset();
+            }
+            replayedInRow = 0;
+        }
+        if (getThing().getStatus() == ThingStatus.ONLINE) {
+            setChannelsToUndef();
+            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, "No data received for some time");
+        }
+    }
+
     @Override
     public void bridgeStatusChanged(ThingStatusInfo bridgeStatusInfo) {
         super.bridgeStatusChanged(bridgeStatusInfo);
         if (bridgeStatusInfo.getStatus() != ThingStatus.ONLINE) {
             updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.BRIDGE_OFFLINE);
-            setChannelsToUndef();
-            cachedBthomeData = new byte[0];
+            // Channels are set to UNDEF on the startup ramp, a flapping proxy would otherwise flood the event bus
             cancelWatchdog();
             initInternal();
+        } else if (!isDisposed) {
+            restoreLastPayload();
         }
     }
 
     private void setChannelsToUndef() {
-        getThing().getChannels().stream().map(Channel::getUID).forEach(c -> updateState(c, UnDefType.UNDEF));
+        setChannelsToUndef(false);
+    }
+
+    /**
+     * Set linked channels to UNDEF, unless they are UNDEF already
+     *
+     * @param keepPublished leave channels with a state published since the handler was initialized
+     */
+    private void setChannelsToUndef(boolean keepPublished) {
+        aggregator.reset();
+        for (Channel channel : getThing().getChannels()) {
+            ChannelUID channelUID = channel.getUID();
+            if (isLinked(channelUID) && publicationCache.shouldPublishUndef(channelUID, keepPublished)) {
+                updateState(channelUID, UnDefType.UNDEF);
+            }
+        }
     }
 
     @Override
     public void dispose() {
         logger.info("[{}] Disposing BTHomeHandler", getThing().getUID());
         try {
+            watchdog.removeTickListener(aggregationTick);
+            aggregationTickRegistered = false;
+            flushAggregationWindows();
             setChannelsToUndef();
             super.dispose();
         } finally {
+            startupThrottle.cancel(getThing().getUID().getAsString());
             cancelWatchdog();
+            BTHomeIngestionPipeline.Lane lane = ingestionLane;
+            if (lane != null) {
+                lane.close();
+            }
+            deviceMetrics.close();
+            deviceMetrics = BTHomeMetrics.DeviceMetrics.NONE;
+            closeAdapterRegistration();
+            synchronized (thingMutations) {
+                ScheduledFuture<?> flush = thingMutationsFlush;
+                if (flush != null) {
+                    flush.cancel(false);
+                    thingMutationsFlush = null;
+                }
+                thingMutations.clear();
+            }
         }
         isDisposed = true;
         super.dispose();
     }
 
     private void cancelWatchdog() {
-        if (watchDogFuture != null) {
-            watchDogFuture.cancel(true);
-            watchDogFuture = null;
+        BTHomeWatchdog.Registration registration = watchdogRegistration;
+        if (registration != null) {
+            registration.cancel();
+            watchdogRegistration = null;
         }
     }
 
+    /**
+     * @return number of advertisements dropped as duplicates before parsing
+     */
+    public long getSuppressedDuplicateCount() {
+        return duplicateFilter.getSuppressedCount();
+    }
+
+    @Override
+    protected void updateThing(Thing thing) {
+        super.updateThing(thing);
+        rebuildChannelIndex();
+    }
+
+    @Override
+    public void thingUpdated(Thing thing) {
+        super.thingUpdated(thing);
+        rebuildChannelIndex();
+        // Channel configuration may have changed
+        publicationCache.clear();
+        aggregator.clear();
+    }
+
+    private void rebuildChannelIndex() {
+        Map<String, Channel> index = new HashMap<>();
+        for (Channel channel : getThing().getChannels()) {
+            index.put(channel.getUID().getId(), channel);
+        }
+        channelsById = index;
+    }
+
     @Override
     protected List<Channel> createDynamicChannels() {
         return new ArrayList<>();
     }
 
-    private Instant lastRefresh = Instant.EPOCH;
-
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
         if (isDisposed) {
@@ -146,10 +421,10 @@ public class BTHomeHandler extends BeaconBluetoothHandler {
             return;
         }
         if (command instanceof RefreshType) {
-            // Only accept refresh after 2 seconds since we will get this command for each channel
-            if (lastRefresh.plusSeconds(2).isBefore(Instant.now())) {
-                lastRefresh = Instant.now();
-                processDataPacket(cachedBthomeData);
+            // Republish the last state of the channel, nothing to do if the channel has no state yet
+            State state = publicationCache.getLastPublished(channelUID);
+            if (state != null) {
+                updateState(channelUID, state);
             }
         }
     }
@@ -160,616 +435,450 @@ public class BTHomeHandler extends BeaconBluetoothHandler {
             logger.debug("Handler is disposed, ignoring scannotificatiom");
             return;
         }
+        long receivedNanos = System.nanoTime();
 
-        synchronized (receivedStatus) {
-            receivedStatus.set(true);
-            super.onScanRecordReceived(scanNotification);
+        BTHomeWatchdog.Registration registration = watchdogRegistration;
+        if (registration != null) {
+            registration.touch();
+        }
 
-            try {
-                Map<String, byte[]> serviceData = scanNotification.getServiceData();
-                byte[] updatedBthomeData = serviceData.get(BTHomeBindingConstants.SERVICEDATA_UUID);
-
-                // Cache the data for the refresh command
-                if (updatedBthomeData != null) {
-                    logger.debug("[{}] Received updated BTHome data: {}", getThing().getUID(),
-                            Arrays.toString(updatedBthomeData));
-                    cachedBthomeData = updatedBthomeData;
-                    processDataPacket(cachedBthomeData);
+        Map<String, byte[]> serviceData = scanNotification.getServiceData();
+        byte[] updatedBthomeData = serviceData.get(BTHomeBindingConstants.SERVICEDATA_UUID);
+        if (updatedBthomeData != null) {
+            deviceMetrics.packetReceived();
+        }
+
+        // Repeated advertisements are dropped before any parsing
+        if (updatedBthomeData != null && duplicateFilter.isDuplicate(updatedBthomeData, receivedNanos)) {
+            logger.trace("[{}] Dropping duplicate BTHome data, {} suppressed so far", getThing().getUID(),
+                    duplicateFilter.getSuppressedCount());
+            deviceMetrics.duplicateDropped();
+            return;
+        }
+
+        // Copies from the other adapters of a roaming bridge, also when the duplicate filter is disabled
+        BTHomeAdapterTracker.Registration localAdapterRegistration = adapterRegistration;
+        if (updatedBthomeData != null && roamingBridge && localAdapterRegistration != null
+                && localAdapterRegistration.isCopy(updatedBthomeData, receivedNanos)) {
+            logger.trace("[{}] Dropping copy of BTHome data from another adapter", getThing().getUID());
+            deviceMetrics.duplicateDropped();
+            return;
+        }
+
+        if (updatedBthomeData != null && updatedBthomeData.length > 0 && registration != null
+                && adaptiveOfflineDetection) {
+            boolean triggerBased = BTHomeDecoder.isTriggerBased(updatedBthomeData[0] & 0xFF);
+            intervalEstimator.sample(receivedNanos, triggerBased, configuredTimeoutNanos);
+            registration.setTimeoutNanos(intervalEstimator.timeoutNanos(configuredTimeoutNanos));
+        }
+
+        super.onScanRecordReceived(scanNotification);
+
+        // Parsing and channel updates run on the ingestion pipeline, not on the adapter callback thread
+        BTHomeIngestionPipeline.Lane lane = ingestionLane;
+        if (updatedBthomeData != null && lane != null) {
+            if (isPriority(updatedBthomeData)) {
+                lane.submitPriority(updatedBthomeData, receivedNanos);
+            } else {
+                lane.submit(updatedBthomeData, receivedNanos);
+            }
+        }
+    }
+
+    /**
+     * @return true if the payload carries, or may carry, an event or safety alarm. Encrypted payloads can't be
+     *         inspected before decryption, so devices are recognized by what they sent before.
+     */
+    private boolean isPriority(byte[] bthomeData) {
+        if (bthomeData.length == 0) {
+            return false;
+        }
+        int deviceInformation = bthomeData[0] & 0xFF;
+        if (BTHomeDecoder.isTriggerBased(deviceInformation)) {
+            return true;
+        }
+        if (BTHomeDecoder.isEncrypted(deviceInformation)) {
+            return sendsPriorityMeasurements;
+        }
+        return BTHomeDecoder.containsObjectId(bthomeData, priorityObjectIds);
+    }
+
+    private void processReceivedData(byte[] bthomeData, long receivedNanos) {
+        if (isDisposed) {
+            return;
+        }
+        try {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] Received updated BTHome data: {}", getThing().getUID(),
+                        Arrays.toString(bthomeData));
+            }
+            BTHomeMetrics.DeviceMetrics localMetrics = deviceMetrics;
+            boolean accepted;
+            if (localMetrics.isEnabled()) {
+                long start = System.nanoTime();
+                accepted = processDataPacket(bthomeData, receivedNanos);
+                localMetrics.processed(System.nanoTime() - start);
+            } else {
+                accepted = processDataPacket(bthomeData, receivedNanos);
+            }
+            // Late, repeated, rejected and invalid payloads would restore stale or no data
+            if (accepted) {
+                payloadStore.put(getThing().getUID().getAsString(), bthomeData, System.currentTimeMillis());
+            }
+            BTHomeAdapterTracker.Registration localAdapterRegistration = adapterRegistration;
+            if (localAdapterRegistration != null) {
+                long now = System.nanoTime();
+                ThingUID bestAdapter = localAdapterRegistration.takeChangedBestAdapter(now);
+                if (bestAdapter != null) {
+                    thingMutations.mergeProperties(getThing().getProperties(),
+                            Map.of(BTHomeBindingConstants.PROPERTY_BEST_ADAPTER, bestAdapter.getAsString()));
+                    scheduleThingMutations();
+                }
+                Map<ThingUID, Integer> rssiByAdapter = localAdapterRegistration.takeChangedRssiByAdapter(now);
+                if (rssiByAdapter != null) {
+                    thingMutations.mergeProperties(getThing().getProperties(), Map.of(
+                            BTHomeBindingConstants.PROPERTY_ADAPTER_RSSI, formatRssiByAdapter(rssiByAdapter)));
+                    scheduleThingMutations();
                 }
-            } catch (Exception e) {
-                logger.error("Error processing BTHome data", e);
             }
+            if (adaptiveOfflineDetection) {
+                String interval = intervalEstimator.takeChangedInterval();
+                if (interval != null) {
+                    thingMutations.mergeProperties(getThing().getProperties(),
+                            Map.of(BTHomeBindingConstants.PROPERTY_ADVERTISING_INTERVAL, interval));
+                    scheduleThingMutations();
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Error processing BTHome data", e);
         }
     }
 
     public void processDataPacket(byte[] bthomeData) {
+        processDataPacket(bthomeData, System.nanoTime());
+    }
+
+    /**
+     * @param receivedNanos {@link System#nanoTime()} when the data was received
+     * @return true if the packet was new and processed without error, the payload can then be restored
+     */
+    private boolean processDataPacket(byte[] bthomeData, long receivedNanos) {
         if (bthomeData.length != 0) {
-            try {
-                BthomeServiceData deviceData = new BthomeServiceData(new ByteBufferKaitaiStream(bthomeData));
-                boolean isEncrypted = deviceData.deviceInformation().encryption();
-                if (isEncrypted) {
-                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
-                            "Device sent encrypted data, but encryption is not yet supported in the binding.");
-                    return;
-                }
+            synchronized (packet) {
+                try {
+                    packet.clear();
+                    int deviceInformation = BTHomeDecoder.decode(bthomeData, packet);
+                    boolean isEncrypted = BTHomeDecoder.isEncrypted(deviceInformation);
+                    BTHomeDecryptor localDecryptor = decryptor;
+                    if (isEncrypted) {
+                        if (localDecryptor == null) {
+                            deviceMetrics.encryptedRejected();
+                            updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
+                                    "Device sent encrypted data, configure the bind key of the device.");
+                            return false;
+                        }
+                        int length = localDecryptor.decrypt(bthomeData);
+                        if (length == BTHomeDecryptor.REPLAYED) {
+                            // Repeated advertisement, or an old one replayed
+                            logger.trace("[{}] Dropping encrypted BTHome data with old counter", getThing().getUID());
+                            deviceMetrics.encryptedRejected();
+                            if (++replayedInRow == REPLAYED_STATUS_THRESHOLD) {
+                                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                                        "Device keeps sending old encryption counters, it may have restarted. "
+                                                + "Disable and enable the thing to accept them.");
+                            }
+                            return false;
+                        }
+                        replayedInRow = 0;
+                        BTHomeDecoder.decodeMeasurements(localDecryptor.getPlaintext(), 0, length, packet);
+                    } else if (localDecryptor != null) {
+                        deviceMetrics.encryptedRejected();
+                        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                                "Device sent unencrypted data, but a bind key is configured.");
+                        return false;
+                    }
 
-                ArrayList<BthomeServiceData.BthomeMeasurement> allDataFields = deviceData.measurement();
-                if (allDataFields == null || allDataFields.isEmpty()) {
-                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
-                            "Device sent no measurements.");
-                    return;
-                }
+                    if (packet.size() == 0) {
+                        updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                                "Device sent no measurements.");
+                        return false;
+                    }
 
-                // Check if we have a new packetId
-                Optional<BthomeServiceData.BthomeMeasurement> packetField = allDataFields.stream()
-                        .filter(e -> e.data() instanceof BthomeServiceData.BthomeMiscPacketId).findFirst();
-                if (packetField.isPresent()) {
-                    int newPacketId = ((BthomeServiceData.BthomeMiscPacketId) packetField.get().data()).packetId();
-                    if (newPacketId == lastPacketId) {
-                        // Already processed
-                        return;
+                    // Drop repeated packets, and packets older than those processed unless they carry unseen events
+                    boolean late = false;
+                    int packetIdIndex = packet.indexOf(BTHomeDecoder.OBJECT_ID_PACKET_ID);
+                    if (packetIdIndex >= 0) {
+                        int order = packetIdWindow.check((int) packet.rawValue(packetIdIndex), receivedNanos);
+                        if (order == BTHomePacketIdWindow.DROP) {
+                            deviceMetrics.duplicateDropped();
+                            return false;
+                        }
+                        late = order == BTHomePacketIdWindow.LATE;
                     }
-                    lastPacketId = newPacketId;
-                }
 
-                updateStatus(ThingStatus.ONLINE);
+                    if (!restoring && getThing().getStatus() != ThingStatus.ONLINE) {
+                        updateStatus(ThingStatus.ONLINE);
+                    }
 
-                // Thing properties
-                List<BthomeServiceData.BthomeMeasurement> deviceProperties = allDataFields.stream()
-                        .filter(prop -> prop.objectId().id() >= 0xF0).collect(Collectors.toList());
-                if (!deviceProperties.isEmpty()) {
-                    Map<String, String> updatedProperties = parseDeviceProperties(deviceProperties);
-                    updateThing(editThing().withProperties(updatedProperties).build());
-                }
+                    // Devices repeat the same object id sequence, so the target channels are only resolved
+                    // (and missing channels created) the first time a layout is seen
+                    BTHomeLayoutCache.Layout layout = layoutCache.find(packet);
+                    if (layout == null) {
+                        layout = resolveLayout();
+                    }
 
-                // Measurements
-                List<BthomeServiceData.BthomeMeasurement> deviceMeasurements = allDataFields.stream()
-                        .filter(prop -> prop.objectId().id() < 0xF0).collect(Collectors.toList());
-
-                Map<BthomeServiceData.BthomeObjectId, List<BthomeServiceData.BthomeMeasurement>> allGroupedMeasurements = deviceMeasurements
-                        .stream().collect(groupingBy(e -> e.objectId()));
-
-                List<Channel> allChannels = createChannelsIfMissing(getThing().getChannels(), allGroupedMeasurements);
-
-                for (BthomeServiceData.BthomeObjectId objectId : allGroupedMeasurements.keySet()) {
-                    List<BthomeServiceData.BthomeMeasurement> measurementsOfType = allGroupedMeasurements.get(objectId);
-                    if (measurementsOfType != null) {
-                        int counter = 0;
-                        for (BthomeServiceData.BthomeMeasurement measurement : measurementsOfType) {
-                            counter++;
-                            Channel channel = getChannel(objectId, allChannels, measurementsOfType.size() > 1, counter);
-                            if (channel != null) {
-                                updateChannelValue(measurement, objectId, channel);
-                            } else {
-                                logger.warn("No channel found for measurement: {}", objectId);
-                            }
+                    // Thing properties, usually unchanged
+                    if (layout.hasDeviceProperties() && !late) {
+                        thingMutations.mergeProperties(getThing().getProperties(), parseDeviceProperties(packet));
+                    }
+
+                    // New channels must exist before their states are updated, property changes can wait
+                    if (thingMutations.hasPendingChannels()) {
+                        applyThingMutations();
+                    } else {
+                        scheduleThingMutations();
+                    }
+
+                    // Events and safety alarms first, routine measurements of the packet can wait
+                    boolean hasPriority = false;
+                    for (int i = 0; i < layout.size(); i++) {
+                        ChannelUID channelUID = layout.target(i);
+                        if (channelUID != null && priorityObjectIds[packet.objectId(i)]) {
+                            updateChannelValue(i, channelUID, late, receivedNanos);
+                            hasPriority = true;
                         }
                     }
+                    if (hasPriority) {
+                        sendsPriorityMeasurements = true;
+                        if (!restoring) {
+                            long latencyNanos = System.nanoTime() - receivedNanos;
+                            deviceMetrics.priorityDispatched(latencyNanos);
+                            logger.debug("[{}] Dispatched events and alarms {} us after reception",
+                                    getThing().getUID(), TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+                        }
+                    }
+
+                    for (int i = 0; i < layout.size(); i++) {
+                        ChannelUID channelUID = layout.target(i);
+                        if (channelUID != null && !priorityObjectIds[packet.objectId(i)]) {
+                            updateChannelValue(i, channelUID, late, receivedNanos);
+                        }
+                    }
+                    return !late;
+                } catch (GeneralSecurityException e) {
+                    logger.debug("[{}] Unable to decrypt BTHome data: {}", getThing().getUID(), e.getMessage());
+                    deviceMetrics.encryptedRejected();
+                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, e.getMessage());
+                    return false;
+                } catch (Exception e) {
+                    logger.error("Error processing BTHome data", e);
+                    deviceMetrics.parseError();
+                    setChannelsToUndef();
+                    updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                            "Error processing BTHome data. Only latest version (V2) is supported: " + e.getMessage());
+                    return false;
                 }
-            } catch (Exception e) {
-                logger.error("Error processing BTHome data", e);
-                getThing().getChannels().stream().map(Channel::getUID).filter(this::isLinked)
-                        .forEach(c -> updateState(c, UnDefType.UNDEF));
-                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
-                        "Error processing BTHome data. Only latest version (V2) is supported: " + e.getMessage());
             }
-
         } else {
             // Received Bluetooth scan with no service data
             // This happens -- we ignore this silently.
+            return false;
+        }
+    }
+
+    private BTHomeLayoutCache.Layout resolveLayout() {
+        boolean hasDeviceProperties = false;
+
+        // Measurements, as indexes into the decoded packet grouped by object id
+        Map<BthomeServiceData.BthomeObjectId, List<Integer>> allGroupedMeasurements = new LinkedHashMap<>();
+        for (int i = 0; i < packet.size(); i++) {
+            int objectId = packet.objectId(i);
+            if (objectId < BTHomeDecoder.FIRST_DEVICE_PROPERTY_OBJECT_ID) {
+                allGroupedMeasurements
+                        .computeIfAbsent(BthomeServiceData.BthomeObjectId.byId(objectId), k -> new ArrayList<>())
+                        .add(i);
+            } else {
+                hasDeviceProperties = true;
+            }
+        }
+
+        createChannelsIfMissing(allGroupedMeasurements);
+
+        @Nullable
+        ChannelUID[] targets = new ChannelUID[packet.size()];
+        for (BthomeServiceData.BthomeObjectId objectId : allGroupedMeasurements.keySet()) {
+            List<Integer> measurementsOfType = allGroupedMeasurements.get(objectId);
+            BTHomeTypeMapping typeMapping = BTHomeTypeMapping.fromBthomeObjectId(objectId);
+            if (measurementsOfType != null && typeMapping != null) {
+                int counter = 0;
+                for (int measurementIndex : measurementsOfType) {
+                    counter++;
+                    String channelId = channelId(typeMapping, measurementsOfType.size() > 1, counter);
+                    targets[measurementIndex] = new ChannelUID(getThing().getUID(), channelId);
+                }
+            }
         }
+        return layoutCache.put(packet, targets, hasDeviceProperties);
     }
 
-    private Map<String, String> parseDeviceProperties(List<BthomeServiceData.BthomeMeasurement> deviceProperties) {
+    static Map<String, String> parseDeviceProperties(BTHomePacket packet) {
         Map<String, String> updatedProperties = new HashMap<>();
-        for (BthomeServiceData.BthomeMeasurement prop : deviceProperties) {
-            switch (prop.objectId()) {
-                case DEVICE_TYPE -> {
-                    BthomeServiceData.BthomeDeviceType deviceType = (BthomeServiceData.BthomeDeviceType) prop.data();
-                    updatedProperties.put("deviceType", String.valueOf(deviceType.deviceTypeId()));
+        for (int i = 0; i < packet.size(); i++) {
+            long rawValue = packet.rawValue(i);
+            switch (packet.objectId(i)) {
+                case BTHomeDecoder.OBJECT_ID_DEVICE_TYPE -> {
+                    updatedProperties.put(BTHomeBindingConstants.PROPERTY_DEVICE_TYPE, String.valueOf(rawValue));
                 }
-                case DEVICE_FW_VERSION_UINT24 -> {
-                    BthomeServiceData.BthomeDeviceFwVersionUint24 firmwareVersion = (BthomeServiceData.BthomeDeviceFwVersionUint24) prop
-                            .data();
-                    updatedProperties.put("firmwareVersion", String.format("%d.%d.%d", firmwareVersion.fwVersionMajor(),
-                            firmwareVersion.fwVersionMinor(), firmwareVersion.fwVersionPatch()));
+                case BTHomeDecoder.OBJECT_ID_FW_VERSION_UINT24 -> {
+                    // Sent as patch, minor, major
+                    updatedProperties.put(BTHomeBindingConstants.PROPERTY_FIRMWARE_VERSION, String.format("%d.%d.%d",
+                            (rawValue >> 16) & 0xFF, (rawValue >> 8) & 0xFF, rawValue & 0xFF));
                 }
-                case DEVICE_FW_VERSION_UINT32 -> {
-                    BthomeServiceData.BthomeDeviceFwVersionUint32 firmwareVersion = (BthomeServiceData.BthomeDeviceFwVersionUint32) prop
-                            .data();
-                    updatedProperties.put("firmwareVersion",
-                            String.format("%d.%d.%d.%d", firmwareVersion.fwVersionMajor(),
-                                    firmwareVersion.fwVersionMinor(), firmwareVersion.fwVersionPatch(),
-                                    firmwareVersion.fwVersionBuild()));
+                case BTHomeDecoder.OBJECT_ID_FW_VERSION_UINT32 -> {
+                    // Sent as build, patch, minor, major
+                    updatedProperties.put(BTHomeBindingConstants.PROPERTY_FIRMWARE_VERSION,
+                            String.format("%d.%d.%d.%d", (rawValue >> 24) & 0xFF, (rawValue >> 16) & 0xFF,
+                                    (rawValue >> 8) & 0xFF, rawValue & 0xFF));
                 }
                 default -> {
-                    logger.warn("Unknown device property: {}", prop.objectId());
+                    // Measurement, handled in updateChannelValue
                 }
             }
         }
         return updatedProperties;
     }
 
-    private void updateChannelValue(BthomeServiceData.BthomeMeasurement measurement,
-            BthomeServiceData.BthomeObjectId bthomeObjectId, Channel channel) {
-
-        State state = null;
-        switch (bthomeObjectId) {
-
-            case MISC_PACKET_ID: {
-                BthomeServiceData.BthomeMiscPacketId m = (BthomeServiceData.BthomeMiscPacketId) measurement.data();
-                state = toNumericState(channel, null, m.packetId());
-                break;
-            }
-            case SENSOR_ACCELERATION: {
-                BthomeServiceData.BthomeSensorAcceleration m = (BthomeServiceData.BthomeSensorAcceleration) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.acceleration());
-                break;
-            }
-
-            case SENSOR_BATTERY: {
-                BthomeServiceData.BthomeSensorBattery m = (BthomeServiceData.BthomeSensorBattery) measurement.data();
-                state = toNumericState(channel, m.unit(), m.battery());
-                break;
-            }
-            case SENSOR_CO2: {
-                BthomeServiceData.BthomeSensorCo2 m = (BthomeServiceData.BthomeSensorCo2) measurement.data();
-                state = toNumericState(channel, m.unit(), m.co2());
-                break;
-            }
-
-            case SENSOR_COUNT: {
-                BthomeServiceData.BthomeSensorCount m = (BthomeServiceData.BthomeSensorCount) measurement.data();
-                state = toNumericState(channel, null, m.count());
-                break;
-            }
-            case SENSOR_COUNT_UINT16: {
-                BthomeServiceData.BthomeSensorCountUint16 m = (BthomeServiceData.BthomeSensorCountUint16) measurement
-                        .data();
-                state = toNumericState(channel, null, m.count());
-                break;
-            }
-            case SENSOR_COUNT_UINT32: {
-                BthomeServiceData.BthomeSensorCountUint32 m = (BthomeServiceData.BthomeSensorCountUint32) measurement
-                        .data();
-                state = toNumericState(channel, null, m.count());
-                break;
-            }
-
-            case SENSOR_CURRENT_0_001: {
-                BthomeServiceData.BthomeSensorCurrent0001 m = (BthomeServiceData.BthomeSensorCurrent0001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.current());
-                break;
-            }
-
-            case SENSOR_DEWPOINT_0_01: {
-                BthomeServiceData.BthomeSensorDewpoint001 m = (BthomeServiceData.BthomeSensorDewpoint001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.dewPoint());
-                break;
-            }
-
-            case SENSOR_DISTANCE_MM: {
-                BthomeServiceData.BthomeSensorDistanceMm m = (BthomeServiceData.BthomeSensorDistanceMm) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.distance());
-                break;
-            }
-            case SENSOR_DISTANCE_M_0_1: {
-                BthomeServiceData.BthomeSensorDistanceM01 m = (BthomeServiceData.BthomeSensorDistanceM01) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.distance());
-                break;
-            }
-
-            case SENSOR_DURATION_0_001: {
-                BthomeServiceData.BthomeSensorDuration0001 m = (BthomeServiceData.BthomeSensorDuration0001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.duration());
-                break;
-            }
-
-            case SENSOR_ENERGY_0_001: {
-                BthomeServiceData.BthomeSensorEnergy0001 m = (BthomeServiceData.BthomeSensorEnergy0001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.energy());
-                break;
-            }
-
-            case SENSOR_ENERGY_0_001_UINT32: {
-                BthomeServiceData.BthomeSensorEnergy0001Uint32 m = (BthomeServiceData.BthomeSensorEnergy0001Uint32) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.energy());
-                break;
-            }
-
-            case SENSOR_GAS: {
-                BthomeServiceData.BthomeSensorGas m = (BthomeServiceData.BthomeSensorGas) measurement.data();
-                state = toNumericState(channel, m.unit(), m.gas());
-                break;
-            }
-            case SENSOR_GAS_UINT32: {
-                BthomeServiceData.BthomeSensorGasUint32 m = (BthomeServiceData.BthomeSensorGasUint32) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.gas());
-                break;
+    /**
+     * @param late the packet is older than a packet already processed, its states are outdated
+     * @param receivedNanos {@link System#nanoTime()} when the packet was received
+     */
+    private void updateChannelValue(int measurementIndex, ChannelUID channelUID, boolean late, long receivedNanos) {
+        BTHomeConversionTable.Conversion conversion = BTHomeConversionTable.get(packet.objectId(measurementIndex));
+        if (conversion == null) {
+            return;
+        }
+        if (conversion.getTypeMapping().getChannelKind() == ChannelKind.TRIGGER) {
+            if (restoring) {
+                // Events already happened
+                return;
+            }
+            String event = conversion.toEvent(packet, measurementIndex);
+            if (event != null) {
+                triggerChannel(channelUID, event);
+            }
+        } else if (!late) {
+            State state = conversion.toState(packet, measurementIndex);
+            if (state != null) {
+                publishState(channelUID, state);
+            }
+            BTHomeDerivedRate derivedRate = derivedRateChannels
+                    ? BTHomeDerivedRate.fromObjectId(conversion.getObjectId())
+                    : null;
+            // Restored values were received at another time
+            if (derivedRate != null && !restoring) {
+                State rate = rateTracker.sample(channelUID, derivedRate, conversion,
+                        packet.rawValue(measurementIndex), receivedNanos);
+                if (rate != null) {
+                    publishState(new ChannelUID(getThing().getUID(), derivedRate.channelId(channelUID.getId())),
+                            rate);
+                }
             }
+        }
+    }
 
-            case SENSOR_GYROSCOPE: {
-                BthomeServiceData.BthomeSensorGyroscope m = (BthomeServiceData.BthomeSensorGyroscope) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.gyroscope());
-                break;
-            }
+    private void publishState(ChannelUID channelUID, State state) {
+        Channel channel = channelsById.get(channelUID.getId());
+        long nowNanos = System.nanoTime();
+        State aggregated = aggregator.aggregate(channelUID, channel, state, nowNanos);
+        if (aggregated != state && !aggregationTickRegistered) {
+            aggregationTickRegistered = true;
+            watchdog.addTickListener(aggregationTick);
+        }
+        if (aggregated != null) {
+            publishAggregated(channelUID, aggregated, nowNanos);
+        }
+    }
 
-            case SENSOR_HUMIDITY: {
-                BthomeServiceData.BthomeSensorHumidity m = (BthomeServiceData.BthomeSensorHumidity) measurement.data();
-                state = toNumericState(channel, m.unit(), m.humidity());
-                break;
-            }
-            case SENSOR_HUMIDITY_0_01: {
-                BthomeServiceData.BthomeSensorHumidity001 m = (BthomeServiceData.BthomeSensorHumidity001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.humidity());
-                break;
-            }
-            case SENSOR_ILLUMINANCE_0_01: {
-                BthomeServiceData.BthomeSensorIlluminance001 m = (BthomeServiceData.BthomeSensorIlluminance001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.illuminance());
-                break;
-            }
+    private void publishAggregated(ChannelUID channelUID, State state, long nowNanos) {
+        if (publicationCache.shouldPublish(channelUID, channelsById.get(channelUID.getId()), state, nowNanos)) {
+            updateState(channelUID, state);
+            deviceMetrics.statePublished();
+        }
+    }
 
-            case SENSOR_MASS_KG_0_01: {
-                BthomeServiceData.BthomeSensorMassKg001 m = (BthomeServiceData.BthomeSensorMassKg001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.mass());
-                break;
-            }
-            case SENSOR_MASS_LB_0_01: {
-                BthomeServiceData.BthomeSensorMassLb001 m = (BthomeServiceData.BthomeSensorMassLb001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.mass());
-                break;
-            }
-            case SENSOR_MOISTURE_0_01: {
-                BthomeServiceData.BthomeSensorMoisture001 m = (BthomeServiceData.BthomeSensorMoisture001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.moisture());
-                break;
-            }
-            case SENSOR_MOISTURE: {
-                BthomeServiceData.BthomeSensorMoisture m = (BthomeServiceData.BthomeSensorMoisture) measurement.data();
-                state = toNumericState(channel, m.unit(), m.moisture());
-                break;
-            }
+    private void closeAggregationWindows(long nowNanos) {
+        if (!isDisposed) {
+            aggregator.flush(nowNanos, false, (channelUID, state) -> publishAggregated(channelUID, state, nowNanos));
+        }
+    }
 
-            case SENSOR_PM2_5: {
-                BthomeServiceData.BthomeSensorPm25 m = (BthomeServiceData.BthomeSensorPm25) measurement.data();
-                state = toNumericState(channel, m.unit(), m.pm25());
-                break;
-            }
-            case SENSOR_PM10: {
-                BthomeServiceData.BthomeSensorPm10 m = (BthomeServiceData.BthomeSensorPm10) measurement.data();
-                state = toNumericState(channel, m.unit(), m.pm10());
-                break;
-            }
+    /**
+     * Publish the values of all open aggregation windows
+     */
+    private void flushAggregationWindows() {
+        long nowNanos = System.nanoTime();
+        aggregator.flush(nowNanos, true, (channelUID, state) -> publishAggregated(channelUID, state, nowNanos));
+    }
 
-            case SENSOR_POWER_0_01: {
-                BthomeServiceData.BthomeSensorPower001 m = (BthomeServiceData.BthomeSensorPower001) measurement.data();
-                state = toNumericState(channel, m.unit(), m.power());
-                break;
-            }
-            case SENSOR_PRESSURE_0_01: {
-                BthomeServiceData.BthomeSensorPressure001 m = (BthomeServiceData.BthomeSensorPressure001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.pressure());
-                break;
+    /**
+     * @return ids of the channels of the measurements in the packet, in packet order
+     */
+    static List<String> channelIds(BTHomePacket packet) {
+        Map<BTHomeTypeMapping, Integer> counts = new LinkedHashMap<>();
+        for (int i = 0; i < packet.size(); i++) {
+            int objectId = packet.objectId(i);
+            if (objectId < BTHomeDecoder.FIRST_DEVICE_PROPERTY_OBJECT_ID) {
+                BTHomeTypeMapping typeMapping = BTHomeTypeMapping.fromObjectId(objectId);
+                if (typeMapping != null) {
+                    counts.merge(typeMapping, 1, Integer::sum);
+                }
             }
-
-            case SENSOR_RAW: {
-                BthomeServiceData.BthomeSensorRaw m = (BthomeServiceData.BthomeSensorRaw) measurement.data();
-                state = new StringType(Base64.getEncoder().encodeToString(m.value()));
-                break;
+        }
+        List<String> channelIds = new ArrayList<>();
+        counts.forEach((typeMapping, count) -> {
+            for (int counter = 1; counter <= count; counter++) {
+                channelIds.add(channelId(typeMapping, count > 1, counter));
             }
+        });
+        return channelIds;
+    }
 
-            case SENSOR_ROTATION_0_1: {
-                BthomeServiceData.BthomeSensorRotation01 m = (BthomeServiceData.BthomeSensorRotation01) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.rotation());
-                break;
-            }
+    private static String channelId(BTHomeTypeMapping typeMapping, boolean multipleChannelsPerMeasurement,
+            int counter) {
+        return typeMapping.getChannelName() + (multipleChannelsPerMeasurement ? "_" + counter : "");
+    }
 
-            case SENSOR_SPEED_0_01: {
-                BthomeServiceData.BthomeSensorSpeed001 m = (BthomeServiceData.BthomeSensorSpeed001) measurement.data();
-                state = toNumericState(channel, m.unit(), m.speed());
-                break;
-            }
+    /**
+     * Apply pending property changes after a short delay, merging changes from a burst of packets
+     */
+    private void scheduleThingMutations() {
+        synchronized (thingMutations) {
+            ScheduledFuture<?> flush = thingMutationsFlush;
+            if (thingMutations.isEmpty() || (flush != null && !flush.isDone())) {
+                return;
+            }
+            thingMutationsFlush = scheduler.schedule(this::applyThingMutations, THING_MUTATIONS_DELAY_SECONDS,
+                    TimeUnit.SECONDS);
+        }
+    }
 
-            case SENSOR_TEMPERATURE_0_01: {
-                BthomeServiceData.BthomeSensorTemperature001 m = (BthomeServiceData.BthomeSensorTemperature001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.temperature());
-                break;
+    /**
+     * Apply all pending property and channel changes with a single thing update
+     */
+    private void applyThingMutations() {
+        synchronized (thingMutations) {
+            if (isDisposed) {
+                return;
             }
-
-            case SENSOR_TEMPERATURE_0_1: {
-                BthomeServiceData.BthomeSensorTemperature01 m = (BthomeServiceData.BthomeSensorTemperature01) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.temperature());
-                break;
+            Thing updatedThing = thingMutations.apply(getThing(), editThing());
+            if (updatedThing != null) {
+                updateThing(updatedThing);
             }
-
-            case SENSOR_TEXT: {
-                BthomeServiceData.BthomeSensorText m = (BthomeServiceData.BthomeSensorText) measurement.data();
-                state = new StringType(m.value());
-                break;
-            }
-
-            case SENSOR_TIMESTAMP: {
-                BthomeServiceData.BthomeSensorTimestamp m = (BthomeServiceData.BthomeSensorTimestamp) measurement
-                        .data();
-                state = new DateTimeType(
-                        ZonedDateTime.ofInstant(Instant.ofEpochSecond(m.value()), ZoneId.systemDefault()));
-                break;
-            }
-
-            case SENSOR_TVOC: {
-                BthomeServiceData.BthomeSensorTvoc m = (BthomeServiceData.BthomeSensorTvoc) measurement.data();
-                state = toNumericState(channel, m.unit(), m.tvoc());
-                break;
-            }
-
-            case SENSOR_VOLTAGE_0_001: {
-                BthomeServiceData.BthomeSensorVoltage0001 m = (BthomeServiceData.BthomeSensorVoltage0001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.voltage());
-                break;
-            }
-
-            case SENSOR_VOLTAGE_0_1: {
-                BthomeServiceData.BthomeSensorVoltage01 m = (BthomeServiceData.BthomeSensorVoltage01) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.voltage());
-                break;
-            }
-            case SENSOR_VOLUME: {
-                BthomeServiceData.BthomeSensorVolume m = (BthomeServiceData.BthomeSensorVolume) measurement.data();
-                state = toNumericState(channel, m.unit(), m.volume());
-                break;
-            }
-            case SENSOR_VOLUME_0_1: {
-                BthomeServiceData.BthomeSensorVolume01 m = (BthomeServiceData.BthomeSensorVolume01) measurement.data();
-                state = toNumericState(channel, m.unit(), m.volume());
-                break;
-            }
-            case SENSOR_VOLUME_0_001: {
-                BthomeServiceData.BthomeSensorVolume0001 m = (BthomeServiceData.BthomeSensorVolume0001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.volume());
-                break;
-            }
-            case SENSOR_VOLUME_FLOW_RATE_0_001: {
-                BthomeServiceData.BthomeSensorVolumeFlowRate0001 m = (BthomeServiceData.BthomeSensorVolumeFlowRate0001) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.volumeFlowRate());
-                break;
-            }
-            case SENSOR_VOLUME_STORAGE: {
-                BthomeServiceData.BthomeSensorVolumeStorage m = (BthomeServiceData.BthomeSensorVolumeStorage) measurement
-                        .data();
-                state = toNumericState(channel, m.unit(), m.volumeStorage());
-                break;
-            }
-
-            case SENSOR_UV_INDEX_0_1: {
-                BthomeServiceData.BthomeSensorUvIndex01 m = (BthomeServiceData.BthomeSensorUvIndex01) measurement
-                        .data();
-                state = toNumericState(channel, null, m.uvIndex());
-                break;
-            }
-            case SENSOR_WATER: {
-                BthomeServiceData.BthomeSensorWater m = (BthomeServiceData.BthomeSensorWater) measurement.data();
-                state = toNumericState(channel, m.unit(), m.water());
-                break;
-            }
-
-            // BINARY
-
-            case BINARY_BATTERY: {
-                BthomeServiceData.BthomeBinaryBattery m = (BthomeServiceData.BthomeBinaryBattery) measurement.data();
-                state = toSwitchState(m.battery());
-                break;
-            }
-            case BINARY_BATTERY_CHARGING: {
-                BthomeServiceData.BthomeBinaryBatteryCharging m = (BthomeServiceData.BthomeBinaryBatteryCharging) measurement
-                        .data();
-                state = toSwitchState(m.batteryCharging());
-                break;
-            }
-            case BINARY_CARBON_MONOXIDE: {
-                BthomeServiceData.BthomeBinaryCarbonMonoxide m = (BthomeServiceData.BthomeBinaryCarbonMonoxide) measurement
-                        .data();
-                state = toSwitchState(m.carbonMonoxide());
-                break;
-            }
-            case BINARY_COLD: {
-                BthomeServiceData.BthomeBinaryCold m = (BthomeServiceData.BthomeBinaryCold) measurement.data();
-                state = toSwitchState(m.cold());
-                break;
-            }
-            case BINARY_CONNECTIVITY: {
-                BthomeServiceData.BthomeBinaryConnectivity m = (BthomeServiceData.BthomeBinaryConnectivity) measurement
-                        .data();
-                state = toSwitchState(m.connectivity());
-                break;
-            }
-            case BINARY_DOOR: {
-                BthomeServiceData.BthomeBinaryDoor m = (BthomeServiceData.BthomeBinaryDoor) measurement.data();
-                state = toContactState(m.door());
-                break;
-            }
-            case BINARY_GARAGE_DOOR: {
-                BthomeServiceData.BthomeBinaryGarageDoor m = (BthomeServiceData.BthomeBinaryGarageDoor) measurement
-                        .data();
-                state = toContactState(m.garageDoor());
-                break;
-            }
-            case BINARY_GAS: {
-                BthomeServiceData.BthomeBinaryGas m = (BthomeServiceData.BthomeBinaryGas) measurement.data();
-                state = toSwitchState(m.gas());
-                break;
-            }
-            case BINARY_GENERIC_BOOLEAN: {
-                BthomeServiceData.BthomeBinaryGenericBoolean m = (BthomeServiceData.BthomeBinaryGenericBoolean) measurement
-                        .data();
-                state = toSwitchState(m.genericBoolean());
-                break;
-            }
-            case BINARY_HEAT: {
-                BthomeServiceData.BthomeBinaryHeat m = (BthomeServiceData.BthomeBinaryHeat) measurement.data();
-                state = toSwitchState(m.heat());
-                break;
-            }
-            case BINARY_LIGHT: {
-                BthomeServiceData.BthomeBinaryLight m = (BthomeServiceData.BthomeBinaryLight) measurement.data();
-                state = toSwitchState(m.light());
-                break;
-            }
-            case BINARY_LOCK: {
-                BthomeServiceData.BthomeBinaryLock m = (BthomeServiceData.BthomeBinaryLock) measurement.data();
-                state = toSwitchState(m.lock());
-                break;
-            }
-            case BINARY_MOISTURE: {
-                BthomeServiceData.BthomeBinaryMoisture m = (BthomeServiceData.BthomeBinaryMoisture) measurement.data();
-                state = toSwitchState(m.moisture());
-                break;
-            }
-            case BINARY_MOTION: {
-                BthomeServiceData.BthomeBinaryMotion m = (BthomeServiceData.BthomeBinaryMotion) measurement.data();
-                state = toSwitchState(m.motion());
-                break;
-            }
-            case BINARY_MOVING: {
-                BthomeServiceData.BthomeBinaryMoving m = (BthomeServiceData.BthomeBinaryMoving) measurement.data();
-                state = toSwitchState(m.moving());
-                break;
-            }
-            case BINARY_OCCUPANCY: {
-                BthomeServiceData.BthomeBinaryOccupancy m = (BthomeServiceData.BthomeBinaryOccupancy) measurement
-                        .data();
-                state = toSwitchState(m.occupancy());
-                break;
-            }
-            case BINARY_OPENING: {
-                BthomeServiceData.BthomeBinaryOpening m = (BthomeServiceData.BthomeBinaryOpening) measurement.data();
-                state = toContactState(m.opening());
-                break;
-            }
-            case BINARY_PLUG: {
-                BthomeServiceData.BthomeBinaryPlug m = (BthomeServiceData.BthomeBinaryPlug) measurement.data();
-                state = toSwitchState(m.plug());
-                break;
-            }
-            case BINARY_POWER: {
-                BthomeServiceData.BthomeBinaryPower m = (BthomeServiceData.BthomeBinaryPower) measurement.data();
-                state = toSwitchState(m.power());
-                break;
-            }
-            case BINARY_PRESENCE: {
-                BthomeServiceData.BthomeBinaryPresence m = (BthomeServiceData.BthomeBinaryPresence) measurement.data();
-                state = toSwitchState(m.presence());
-                break;
-            }
-            case BINARY_PROBLEM: {
-                BthomeServiceData.BthomeBinaryProblem m = (BthomeServiceData.BthomeBinaryProblem) measurement.data();
-                state = toSwitchState(m.problem());
-                break;
-            }
-            case BINARY_RUNNING: {
-                BthomeServiceData.BthomeBinaryRunning m = (BthomeServiceData.BthomeBinaryRunning) measurement.data();
-                state = toSwitchState(m.running());
-                break;
-            }
-            case BINARY_SAFETY: {
-                BthomeServiceData.BthomeBinarySafety m = (BthomeServiceData.BthomeBinarySafety) measurement.data();
-                state = toSwitchState(m.safety());
-                break;
-            }
-            case BINARY_SMOKE: {
-                BthomeServiceData.BthomeBinarySmoke m = (BthomeServiceData.BthomeBinarySmoke) measurement.data();
-                state = toSwitchState(m.smoke());
-                break;
-            }
-            case BINARY_SOUND: {
-                BthomeServiceData.BthomeBinarySound m = (BthomeServiceData.BthomeBinarySound) measurement.data();
-                state = toSwitchState(m.sound());
-                break;
-            }
-            case BINARY_TAMPER: {
-                BthomeServiceData.BthomeBinaryTamper m = (BthomeServiceData.BthomeBinaryTamper) measurement.data();
-                state = toSwitchState(m.tamper());
-                break;
-            }
-            case BINARY_VIBRATION: {
-                BthomeServiceData.BthomeBinaryVibration m = (BthomeServiceData.BthomeBinaryVibration) measurement
-                        .data();
-                state = toSwitchState(m.vibration());
-                break;
-            }
-            case BINARY_WINDOW: {
-                BthomeServiceData.BthomeBinaryWindow m = (BthomeServiceData.BthomeBinaryWindow) measurement.data();
-                state = toContactState(m.window());
-                break;
-            }
-
-            case EVENT_BUTTON: {
-                BthomeServiceData.BthomeEventButton m = (BthomeServiceData.BthomeEventButton) measurement.data();
-                BthomeServiceData.ButtonEventType event = m.event();
-                triggerChannel(channel.getUID(), event.toString());
-                break;
-            }
-            case EVENT_DIMMER: {
-                BthomeServiceData.BthomeEventDimmer m = (BthomeServiceData.BthomeEventDimmer) measurement.data();
-                BthomeServiceData.DimmerEventType event = m.event();
-                // Will trigger values NONE, ROTATE_LEFT_X, ROTATE_RIGHT_X where X is the number of steps
-                triggerChannel(channel.getUID(), event.toString() + (m.steps() > 0 ? "_" + m.steps() : ""));
-                break;
-            }
-
-            case DEVICE_FW_VERSION_UINT32:
-            case DEVICE_FW_VERSION_UINT24:
-            case DEVICE_TYPE:
-                // These are handled in parseDeviceProperties
-                break;
-
-        }
-        if (state != null) {
-            updateState(channel.getUID(), state);
-        }
-    }
-
-    @Nullable
-    private Channel getChannel(BthomeServiceData.BthomeObjectId bthomeObjectId, List<Channel> currentChannels,
-            boolean multipleChannelsPerMeasurement, int counter) {
-        BTHomeTypeMapping typeMapping = BTHomeTypeMapping.fromBthomeObjectId(bthomeObjectId);
-        if (typeMapping == null) {
-            return null;
         }
-
-        ChannelUID channelUID = new ChannelUID(getThing().getUID(),
-                typeMapping.getChannelName() + (multipleChannelsPerMeasurement ? "_" + counter : ""));
-        return currentChannels.stream().filter(c -> c.getUID().equals(channelUID)).findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("No channel found for channel UID: " + channelUID));
     }
 
-    private List<Channel> createChannelsIfMissing(List<Channel> currentChannels,
-            Map<BthomeServiceData.BthomeObjectId, List<BthomeServiceData.BthomeMeasurement>> measurements) {
+    private void createChannelsIfMissing(Map<BthomeServiceData.BthomeObjectId, List<Integer>> measurements) {
 
-        List<Channel> allChannels = new ArrayList<>(currentChannels);
         List<Channel> newChannels = new ArrayList<>();
 
         Set<BthomeServiceData.BthomeObjectId> bthomeObjectIds = measurements.keySet();
@@ -785,127 +894,112 @@ public class BTHomeHandler extends BeaconBluetoothHandler {
                 continue;
             }
 
-            List<BthomeServiceData.BthomeMeasurement> bthomeMeasurements = measurements.get(bthomeObjectId);
+            List<Integer> bthomeMeasurements = measurements.get(bthomeObjectId);
 
-            List<Channel> channels = getOrCreateChannels(currentChannels, typeMapping,
-                    bthomeMeasurements != null ? bthomeMeasurements.size() : 0);
-            newChannels.addAll(channels);
+            int numMeasurements = bthomeMeasurements != null ? bthomeMeasurements.size() : 0;
+            newChannels.addAll(getOrCreateChannels(typeMapping, numMeasurements));
+            BTHomeDerivedRate derivedRate = BTHomeDerivedRate.fromObjectId(typeMapping.getObjectId());
+            if (derivedRateChannels && derivedRate != null) {
+                newChannels.addAll(getOrCreateDerivedChannels(typeMapping, derivedRate, numMeasurements));
+            }
 
         }
         if (!newChannels.isEmpty()) {
             logger.debug("Adding new channels: {}",
                     newChannels.stream().map(Channel::getUID).collect(Collectors.toList()));
-            allChannels.addAll(newChannels);
-            Thing updatedThing = editThing().withChannels(allChannels).build();
-            updateThing(updatedThing);
-        }
-
-        return allChannels;
-    }
-
-    private State toSwitchState(BthomeServiceData.Bool8 value) {
-        return value.value() ? OnOffType.ON : OnOffType.OFF;
-    }
-
-    private State toContactState(BthomeServiceData.Bool8 value) {
-        return value.value() ? OpenClosedType.OPEN : OpenClosedType.CLOSED;
-    }
-
-    private State toNumericState(Channel channel, @Nullable String unitString, Number value) {
-
-        if (unitString != null) {
-            Unit<?> unit = UnitUtils.parseUnit(unitString);
-            if (unit != null) {
-                return new QuantityType<>(value, unit);
-            } else {
-                logger.warn("Unit '{}' unknown to openHAB, returning DecimalType for state '{}' on channel '{}'",
-                        unitString, value, channel.getUID());
-                return new DecimalType(value);
-
-            }
-        } else {
-            return new DecimalType(value);
+            thingMutations.addChannels(newChannels);
         }
     }
 
-    private List<Channel> getOrCreateChannels(List<Channel> exisingChannels, BTHomeTypeMapping typeMapping,
-            int numMeasurements) {
+    private List<Channel> getOrCreateChannels(BTHomeTypeMapping typeMapping, int numMeasurements) {
 
         boolean multipleMeasurementsOfSameType = numMeasurements > 1;
 
         List<Channel> newChannels = new ArrayList<>();
 
         for (int counter = 1; counter <= numMeasurements; counter++) {
-            String channelName = typeMapping.getChannelName() + (multipleMeasurementsOfSameType ? "_" + counter : "");
-            ChannelUID channelUID = new ChannelUID(getThing().getUID(), channelName);
-            Optional<Channel> existingChannel = exisingChannels.stream().filter(c -> c.getUID().equals(channelUID))
-                    .findFirst();
-            if (existingChannel.isEmpty()) {
+            String channelName = channelId(typeMapping, multipleMeasurementsOfSameType, counter);
+            if (!channelsById.containsKey(channelName) && !thingMutations.hasPendingChannel(channelName)) {
+                ChannelUID channelUID = new ChannelUID(getThing().getUID(), channelName);
                 String channelLabel = channelName.substring(0, 1).toUpperCase() + channelName.substring(1)
                         + (multipleMeasurementsOfSameType ? "_" + counter : "");
 
-                if (typeMapping.getChannelKind() == ChannelKind.TRIGGER) {
-                    ChannelType newChannelType = createTriggerChannelType(channelName, channelLabel, typeMapping);
-                    Channel newChannel = ChannelBuilder.create(channelUID).withLabel(channelLabel)
-                            .withKind(typeMapping.getChannelKind()).withType(newChannelType.getUID()).build();
-                    dynamicChannelTypeProvider.putChannelType(newChannelType);
-                    newChannels.add(newChannel);
-                } else {
-                    ChannelType newChannelType = createStateChannelType(channelName, channelName,
-                            typeMapping.getItemType(), typeMapping);
-
-                    Channel newChannel = ChannelBuilder.create(channelUID).withLabel(channelLabel)
-                            .withKind(typeMapping.getChannelKind()).withType(newChannelType.getUID())
-                            .withAcceptedItemType(typeMapping.getItemType()).build();
-
-                    dynamicChannelTypeProvider.putChannelType(newChannelType);
-                    newChannels.add(newChannel);
+                ChannelBuilder channelBuilder = ChannelBuilder.create(channelUID).withLabel(channelLabel)
+                        .withKind(typeMapping.getChannelKind()).withType(getOrCreateChannelType(channelName,
+                                typeMapping.getChannelKind() == ChannelKind.TRIGGER ? channelLabel : channelName,
+                                typeMapping));
+                if (typeMapping.getChannelKind() != ChannelKind.TRIGGER) {
+                    channelBuilder.withAcceptedItemType(typeMapping.getItemType());
                 }
+                newChannels.add(channelBuilder.build());
             }
         }
 
         return newChannels;
     }
 
-    protected ChannelType createStateChannelType(final String channelIdPrefix, final String label,
-            final String itemType, BTHomeTypeMapping typeMapping) {
-        final ChannelTypeUID channelTypeUID = createChannelTypeUID(channelIdPrefix);
-
-        StateDescriptionFragmentBuilder stateDescription = StateDescriptionFragmentBuilder.create().withReadOnly(true);
-        final ChannelTypeBuilder channelTypeBuilder = ChannelTypeBuilder.state(channelTypeUID, label, itemType)
-                .withStateDescriptionFragment(stateDescription.build());
-
-        return buildChannelType(channelTypeBuilder, typeMapping);
-    }
-
-    protected ChannelType createTriggerChannelType(final String channelIdPrefix, final String label,
-            BTHomeTypeMapping typeMapping) {
-        final ChannelTypeUID channelTypeUID = createChannelTypeUID(channelIdPrefix);
-        return buildChannelType(ChannelTypeBuilder.trigger(channelTypeUID, label), typeMapping);
+    private List<Channel> getOrCreateDerivedChannels(BTHomeTypeMapping typeMapping, BTHomeDerivedRate derivedRate,
+            int numMeasurements) {
+        List<Channel> newChannels = new ArrayList<>();
+        for (int counter = 1; counter <= numMeasurements; counter++) {
+            String channelName = derivedRate.channelId(channelId(typeMapping, numMeasurements > 1, counter));
+            if (!channelsById.containsKey(channelName) && !thingMutations.hasPendingChannel(channelName)) {
+                newChannels.add(ChannelBuilder.create(new ChannelUID(getThing().getUID(), channelName))
+                        .withLabel(channelName.substring(0, 1).toUpperCase() + channelName.substring(1))
+                        .withKind(ChannelKind.STATE).withAcceptedItemType(derivedRate.getItemType())
+                        .withType(BTHomeChannelTypeProvider.sharedChannelTypeUID(derivedRate)).build());
+            }
+        }
+        return newChannels;
     }
 
-    private ChannelType buildChannelType(ChannelTypeBuilder channelTypeBuilder, BTHomeTypeMapping typeMapping) {
-        channelTypeBuilder.isAdvanced(typeMapping.isAdvanced());
-
-        channelTypeBuilder.withTags(Set.of("Property"));
-        if (typeMapping.getCategory() != null) {
-            channelTypeBuilder.withCategory(typeMapping.getCategory());
+    private ChannelTypeUID getOrCreateChannelType(String channelName, String label, BTHomeTypeMapping typeMapping) {
+        if (bindingConfiguration.sharedChannelTypes) {
+            return BTHomeChannelTypeProvider.sharedChannelTypeUID(typeMapping);
         }
-
-        ChannelType channelType = channelTypeBuilder.build();
+        ChannelType channelType = BTHomeChannelTypeProvider.buildChannelType(
+                BTHomeChannelTypeProvider.thingChannelTypeUID(getThing().getUID(), channelName), label, typeMapping);
         logger.debug("Created new channel type {}", channelType.getUID());
-        return channelType;
+        dynamicChannelTypeProvider.putChannelType(channelType);
+        return channelType.getUID();
     }
 
-    private ChannelTypeUID createChannelTypeUID(String channelName) {
-        String uid = String.format("bthome-%s-%s", getThing().getUID().getId(), channelName);
-        final ChannelTypeUID channelTypeUID = new ChannelTypeUID("bluetooth", uid);
-        return channelTypeUID;
+    /**
+     * Move channels using channel types owned by this thing over to the shared channel types, and remove the owned
+     * types from storage
+     */
+    private void migrateToSharedChannelTypes() {
+        ThingUID thingUID = getThing().getUID();
+        List<Channel> channels = new ArrayList<>();
+        boolean migrated = false;
+        for (Channel channel : getThing().getChannels()) {
+            ChannelTypeUID channelTypeUID = channel.getChannelTypeUID();
+            String channelName = channelTypeUID != null
+                    ? BTHomeChannelTypeProvider.channelNameOfThingChannelType(thingUID, channelTypeUID)
+                    : null;
+            // Channel names of repeated measurements have a _1, _2 suffix
+            BTHomeTypeMapping typeMapping = channelName != null
+                    ? BTHomeTypeMapping.fromChannelName(channelName.replaceFirst("_\\d+$", ""))
+                    : null;
+            if (typeMapping != null) {
+                channels.add(ChannelBuilder.create(channel)
+                        .withType(BTHomeChannelTypeProvider.sharedChannelTypeUID(typeMapping)).build());
+                migrated = true;
+            } else {
+                channels.add(channel);
+            }
+        }
+        if (migrated) {
+            logger.debug("[{}] Migrating channels to shared channel types", thingUID);
+            updateThing(editThing().withChannels(channels).build());
+            dynamicChannelTypeProvider.removeChannelTypesForThing(thingUID);
+        }
     }
 
     @Override
     public void handleRemoval() {
         dynamicChannelTypeProvider.removeChannelTypesForThing(thing.getUID());
+        payloadStore.remove(thing.getUID().getAsString());
         super.handleRemoval();
     }
 }
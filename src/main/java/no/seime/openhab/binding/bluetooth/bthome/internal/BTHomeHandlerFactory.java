@@ -13,10 +13,12 @@
 package no.seime.openhab.binding.bluetooth.bthome.internal;
 
 import java.util.Collections;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.config.core.Configuration;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.ThingTypeUID;
 import org.openhab.core.thing.binding.BaseThingHandlerFactory;
@@ -24,6 +26,7 @@ import org.openhab.core.thing.binding.ThingHandler;
 import org.openhab.core.thing.binding.ThingHandlerFactory;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 
 /**
@@ -39,10 +42,45 @@ public class BTHomeHandlerFactory extends BaseThingHandlerFactory {
             .singleton(BTHomeBindingConstants.THING_TYPE_DEVICE);
 
     private final BTHomeChannelTypeProvider dynamicChannelTypeProvider;
+    private final BTHomeIngestionPipeline ingestionPipeline;
+    private final BTHomeWatchdog watchdog;
+    private final BTHomePayloadStore payloadStore;
+    private final BTHomeStartupThrottle startupThrottle;
+    private final BTHomeCaptureRecorder captureRecorder;
+    private final BTHomeMetrics metrics;
+    private final BTHomeAdapterTracker adapterTracker;
+    private volatile BTHomeBindingConfiguration bindingConfiguration;
 
     @Activate
-    public BTHomeHandlerFactory(@Reference BTHomeChannelTypeProvider dynamicChannelTypeProvider) {
+    public BTHomeHandlerFactory(@Reference BTHomeChannelTypeProvider dynamicChannelTypeProvider,
+            @Reference BTHomeIngestionPipeline ingestionPipeline, @Reference BTHomeWatchdog watchdog,
+            @Reference BTHomePayloadStore payloadStore, @Reference BTHomeStartupThrottle startupThrottle,
+            @Reference BTHomeCaptureRecorder captureRecorder, @Reference BTHomeMetrics metrics,
+            @Reference BTHomeAdapterTracker adapterTracker, Map<String, Object> properties) {
         this.dynamicChannelTypeProvider = dynamicChannelTypeProvider;
+        this.ingestionPipeline = ingestionPipeline;
+        this.watchdog = watchdog;
+        this.payloadStore = payloadStore;
+        this.startupThrottle = startupThrottle;
+        this.captureRecorder = captureRecorder;
+        this.metrics = metrics;
+        this.adapterTracker = adapterTracker;
+        this.bindingConfiguration = new Configuration(properties).as(BTHomeBindingConfiguration.class);
+        startupThrottle.setRampSeconds(bindingConfiguration.startupRampSeconds);
+        captureRecorder.configure(bindingConfiguration.captureFile);
+        metrics.setEnabled(bindingConfiguration.metrics);
+    }
+
+    /**
+     * Changes of the channel type mode, metrics and priority channels apply to things initialized afterwards, other
+     * changes apply immediately
+     */
+    @Modified
+    protected void modified(Map<String, Object> properties) {
+        bindingConfiguration = new Configuration(properties).as(BTHomeBindingConfiguration.class);
+        startupThrottle.setRampSeconds(bindingConfiguration.startupRampSeconds);
+        captureRecorder.configure(bindingConfiguration.captureFile);
+        metrics.setEnabled(bindingConfiguration.metrics);
     }
 
     @Override
@@ -56,7 +94,8 @@ public class BTHomeHandlerFactory extends BaseThingHandlerFactory {
         ThingTypeUID thingTypeUID = thing.getThingTypeUID();
 
         if (thingTypeUID.equals(BTHomeBindingConstants.THING_TYPE_DEVICE)) {
-            return new BTHomeHandler(thing, dynamicChannelTypeProvider);
+            return new BTHomeHandler(thing, dynamicChannelTypeProvider, ingestionPipeline, watchdog,
+                    bindingConfiguration, payloadStore, startupThrottle, metrics, adapterTracker);
         }
 
         return null;
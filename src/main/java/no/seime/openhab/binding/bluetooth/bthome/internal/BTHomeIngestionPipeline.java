@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared ingestion stage moving BTHome processing off the Bluetooth adapter callback threads. Every device gets a
+ * {@link Lane}; payloads submitted to a lane are processed on a small, bounded worker pool, one at a time and in
+ * order per device. If a device sends faster than its payloads are processed, the backlog is coalesced to the newest
+ * payload, so there is never more than one queued task per device.
+ *
+ * Payloads carrying events or safety alarms are submitted as priority payloads: they are never coalesced, are
+ * processed before the routine payload of the device, and are scheduled on a separate worker so they don't wait
+ * behind the routine payloads of other devices. At most {@link #MAX_PRIORITY_PENDING} priority payloads are queued per
+ * device, further payloads are coalesced like routine payloads until the backlog has been processed.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomeIngestionPipeline.class)
+@NonNullByDefault
+public class BTHomeIngestionPipeline {
+
+    private static final int MAX_THREADS = 4;
+    static final int MAX_PRIORITY_PENDING = 16;
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeIngestionPipeline.class);
+
+    private final Executor executor;
+    private final Executor priorityExecutor;
+    private final @Nullable ExecutorService ownedExecutor;
+    private final @Nullable ExecutorService ownedPriorityExecutor;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    @Activate
+    public BTHomeIngestionPipeline() {
+        int threads = Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("bthome-ingestion"));
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+        this.ownedExecutor = pool;
+        ThreadPoolExecutor priorityPool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new NamedThreadFactory("bthome-priority"));
+        priorityPool.allowCoreThreadTimeOut(true);
+        this.priorityExecutor = priorityPool;
+        this.ownedPriorityExecutor = priorityPool;
+    }
+
+    /**
+     * Create a pipeline processing on the given executor, <code>Runnable::run</code> processes synchronously
+     */
+    public BTHomeIngestionPipeline(Executor executor) {
+        this(executor, executor);
+    }
+
+    BTHomeIngestionPipeline(Executor executor, Executor priorityExecutor) {
+        this.executor = executor;
+        this.priorityExecutor = priorityExecutor;
+        this.ownedExecutor = null;
+        this.ownedPriorityExecutor = null;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        ExecutorService localExecutor = ownedExecutor;
+        if (localExecutor != null) {
+            localExecutor.shutdownNow();
+        }
+        ExecutorService localPriorityExecutor = ownedPriorityExecutor;
+        if (localPriorityExecutor != null) {
+            localPriorityExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create the lane of a device
+     *
+     * @param address Bluetooth address of the device, used for logging
+     * @param processor called with each payload on a worker thread, never concurrently for the same lane
+     */
+    public Lane createLane(String address, Processor processor) {
+        return new Lane(address, processor);
+    }
+
+    /**
+     * @return number of devices with a payload waiting to be processed
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return number of payloads replaced by a newer payload from the same device before being processed
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Processing of the payloads of a device
+     */
+    @FunctionalInterface
+    public interface Processor {
+        /**
+         * @param receivedNanos {@link System#nanoTime()} when the payload was received
+         */
+        void process(byte[] payload, long receivedNanos);
+    }
+
+    /**
+     * Ordered, coalescing queue of a single device
+     */
+    public final class Lane {
+        private final String address;
+        private final Processor processor;
+        private final AtomicReference<byte @Nullable []> pending = new AtomicReference<>();
+        // Approximate when payloads are submitted concurrently, which only happens with several adapters
+        private volatile long pendingReceivedNanos;
+        private final Queue<PriorityPayload> priorityPending = new ConcurrentLinkedQueue<>();
+        // Size of priorityPending, which is not constant time to compute
+        private final AtomicInteger priorityDepth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean prioritySchedule = new AtomicBoolean();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Lane(String address, Processor processor) {
+            this.address = address;
+            this.processor = processor;
+        }
+
+        /**
+         * Queue a payload for processing, replacing any payload of this device not yet processed
+         */
+        public void submit(byte[] payload, long receivedNanos) {
+            if (closed) {
+                return;
+            }
+            pendingReceivedNanos = receivedNanos;
+            if (pending.getAndSet(payload) == null) {
+                queueDepth.incrementAndGet();
+            } else {
+                coalescedCount.incrementAndGet();
+            }
+            schedule(executor, scheduled);
+        }
+
+        /**
+         * Queue a payload for processing ahead of routine payloads, without replacing any payload. If the device
+         * already has {@link #MAX_PRIORITY_PENDING} priority payloads queued, the payload is submitted as a routine
+         * payload.
+         */
+        public void submitPriority(byte[] payload, long receivedNanos) {
+            if (closed) {
+                return;
+            }
+            if (priorityDepth.incrementAndGet() > MAX_PRIORITY_PENDING) {
+                priorityDepth.decrementAndGet();
+                submit(payload, receivedNanos);
+                return;
+            }
+            priorityPending.add(new PriorityPayload(payload, receivedNanos));
+            queueDepth.incrementAndGet();
+            schedule(priorityExecutor, prioritySchedule);
+        }
+
+        /**
+         * Drop any pending payload and ignore further submissions
+         */
+        public void close() {
+            closed = true;
+            if (pending.getAndSet(null) != null) {
+                queueDepth.decrementAndGet();
+            }
+            while (priorityPending.poll() != null) {
+                priorityDepth.decrementAndGet();
+                queueDepth.decrementAndGet();
+            }
+        }
+
+        private void schedule(Executor target, AtomicBoolean flag) {
+            if (flag.compareAndSet(false, true)) {
+                try {
+                    target.execute(() -> {
+                        flag.set(false);
+                        drain();
+                    });
+                } catch (RejectedExecutionException e) {
+                    logger.debug("[{}] Ingestion pipeline is shut down, dropping payload", address);
+                    flag.set(false);
+                    close();
+                }
+            }
+        }
+
+        /**
+         * Process until nothing is pending, unless already processing on another worker, which then picks up what is
+         * pending
+         */
+        private void drain() {
+            while (running.compareAndSet(false, true)) {
+                try {
+                    processPending();
+                } finally {
+                    running.set(false);
+                }
+                // A payload may have been submitted after the last check but before the flag was cleared
+                if (pending.get() == null && priorityPending.isEmpty()) {
+                    return;
+                }
+            }
+        }
+
+        private void processPending() {
+            while (true) {
+                byte[] payload;
+                long receivedNanos;
+                PriorityPayload priorityPayload = priorityPending.poll();
+                if (priorityPayload != null) {
+                    priorityDepth.decrementAndGet();
+                    payload = priorityPayload.payload;
+                    receivedNanos = priorityPayload.receivedNanos;
+                } else {
+                    receivedNanos = pendingReceivedNanos;
+                    payload = pending.getAndSet(null);
+                    if (payload == null) {
+                        return;
+                    }
+                }
+                queueDepth.decrementAndGet();
+                if (closed) {
+                    continue;
+                }
+                try {
+                    processor.process(payload, receivedNanos);
+                } catch (RuntimeException e) {
+                    logger.warn("[{}] Error processing BTHome data", address, e);
+                }
+            }
+        }
+    }
+
+    private static class PriorityPayload {
+        private final byte[] payload;
+        private final long receivedNanos;
+
+        private PriorityPayload(byte[] payload, long receivedNanos) {
+            this.payload = payload;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+}
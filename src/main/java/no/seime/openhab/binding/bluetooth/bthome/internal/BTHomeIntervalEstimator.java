@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Learns the advertising interval of a device from the time between packets, using an exponentially weighted moving
+ * average of the interval and its mean deviation (as TCP does for round trip times). The offline deadline is derived
+ * from the estimate, so a device advertising every 10 seconds is detected as gone within a minute instead of after
+ * the configured reporting interval.
+ *
+ * Devices flagging their advertisements as trigger based only send on events, so their intervals say nothing about
+ * liveness. For them the configured reporting interval is used.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeIntervalEstimator {
+
+    public static final String TRIGGER_BASED = "trigger based";
+
+    private static final double ALPHA = 0.125;
+    private static final double BETA = 0.25;
+    // Number of intervals before the estimate is used
+    private static final int MIN_SAMPLES = 5;
+    // BLE scanning misses advertisements, allow a few to be lost in a row
+    private static final double MISSED_ADVERTISEMENTS = 3;
+    private static final double DEVIATIONS = 4;
+    private static final long MIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Published interval is only updated when it changes by more than this fraction
+    private static final double PUBLISH_THRESHOLD = 0.1;
+
+    private long lastArrivalNanos = -1;
+    private double meanNanos;
+    private double deviationNanos;
+    private int samples;
+    private boolean triggerBased;
+
+    private double publishedMeanNanos = -1;
+    private boolean publishedTriggerBased;
+
+    public synchronized void reset() {
+        lastArrivalNanos = -1;
+        meanNanos = 0;
+        deviationNanos = 0;
+        samples = 0;
+        triggerBased = false;
+        publishedMeanNanos = -1;
+        publishedTriggerBased = false;
+    }
+
+    /**
+     * Record the arrival of a (non duplicate) packet
+     *
+     * @param maxIntervalNanos longer intervals are outages rather than the advertising interval, and are not learned
+     */
+    public synchronized void sample(long nowNanos, boolean isTriggerBased, long maxIntervalNanos) {
+        triggerBased = isTriggerBased;
+        long previousArrivalNanos = lastArrivalNanos;
+        lastArrivalNanos = nowNanos;
+        if (previousArrivalNanos < 0) {
+            return;
+        }
+        long interval = nowNanos - previousArrivalNanos;
+        if (interval > maxIntervalNanos) {
+            return;
+        }
+        if (samples == 0) {
+            meanNanos = interval;
+            deviationNanos = interval / 2.0;
+        } else {
+            deviationNanos = (1 - BETA) * deviationNanos + BETA * Math.abs(interval - meanNanos);
+            meanNanos = (1 - ALPHA) * meanNanos + ALPHA * interval;
+        }
+        samples++;
+    }
+
+    /**
+     * @param configuredTimeoutNanos timeout from the configured reporting interval, also the upper bound
+     * @return time without packets after which the device is considered offline
+     */
+    public synchronized long timeoutNanos(long configuredTimeoutNanos) {
+        if (triggerBased || samples < MIN_SAMPLES) {
+            return configuredTimeoutNanos;
+        }
+        long learned = (long) Math.max(MISSED_ADVERTISEMENTS * meanNanos, meanNanos + DEVIATIONS * deviationNanos);
+        return Math.min(configuredTimeoutNanos, Math.max(MIN_TIMEOUT_NANOS, learned));
+    }
+
+    /**
+     * @return the learned interval to show as thing property if it changed noticeably since last call, otherwise null
+     */
+    public synchronized @Nullable String takeChangedInterval() {
+        if (triggerBased) {
+            if (publishedTriggerBased) {
+                return null;
+            }
+            publishedTriggerBased = true;
+            publishedMeanNanos = -1;
+            return TRIGGER_BASED;
+        }
+        if (samples < MIN_SAMPLES) {
+            return null;
+        }
+        if (!publishedTriggerBased && publishedMeanNanos > 0
+                && Math.abs(meanNanos - publishedMeanNanos) <= PUBLISH_THRESHOLD * publishedMeanNanos) {
+            return null;
+        }
+        publishedTriggerBased = false;
+        publishedMeanNanos = meanNanos;
+        return String.format(Locale.ROOT, "%.1f s", meanNanos / TimeUnit.SECONDS.toNanos(1));
+    }
+}
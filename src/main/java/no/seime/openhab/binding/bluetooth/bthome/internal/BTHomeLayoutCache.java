@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.ChannelUID;
+
+/**
+ * Small per handler cache of packet layouts. A BTHome device sends the same sequence of object ids in every
+ * advertisement (or alternates between a few), so the channel each measurement goes to only has to be resolved the
+ * first time a layout is seen. Lookups compute a fingerprint of the object id sequence and do not allocate.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeLayoutCache {
+
+    static final int CAPACITY = 8;
+
+    private final @Nullable Layout[] layouts = new Layout[CAPACITY];
+    private int nextSlot;
+
+    /**
+     * @return the cached layout matching the object id sequence of the packet, or null if not seen before
+     */
+    public synchronized @Nullable Layout find(BTHomePacket packet) {
+        int fingerprint = fingerprint(packet);
+        for (Layout layout : layouts) {
+            if (layout != null && layout.fingerprint == fingerprint && layout.matches(packet)) {
+                return layout;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Create and cache a layout for the packet, evicting the oldest entry if full.
+     *
+     * @param targets channel per measurement index of the packet, null for measurements without channel
+     */
+    public synchronized Layout put(BTHomePacket packet, @Nullable ChannelUID[] targets, boolean hasDeviceProperties) {
+        int[] objectIds = new int[packet.size()];
+        for (int i = 0; i < objectIds.length; i++) {
+            objectIds[i] = packet.objectId(i);
+        }
+        Layout layout = new Layout(fingerprint(packet), objectIds, targets, hasDeviceProperties);
+        layouts[nextSlot] = layout;
+        nextSlot = (nextSlot + 1) % CAPACITY;
+        return layout;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            layouts[i] = null;
+        }
+        nextSlot = 0;
+    }
+
+    private static int fingerprint(BTHomePacket packet) {
+        int fingerprint = packet.size();
+        for (int i = 0; i < packet.size(); i++) {
+            fingerprint = 31 * fingerprint + packet.objectId(i);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Resolved layout of a packet: the target channel of every measurement, including the <code>_1</code>,
+     * <code>_2</code> suffixes assigned to repeated object ids.
+     */
+    public static final class Layout {
+        private final int fingerprint;
+        private final int[] objectIds;
+        private final @Nullable ChannelUID[] targets;
+        private final boolean hasDeviceProperties;
+
+        private Layout(int fingerprint, int[] objectIds, @Nullable ChannelUID[] targets, boolean hasDeviceProperties) {
+            this.fingerprint = fingerprint;
+            this.objectIds = objectIds;
+            this.targets = targets;
+            this.hasDeviceProperties = hasDeviceProperties;
+        }
+
+        private boolean matches(BTHomePacket packet) {
+            if (packet.size() != objectIds.length) {
+                return false;
+            }
+            for (int i = 0; i < objectIds.length; i++) {
+                if (packet.objectId(i) != objectIds[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int size() {
+            return objectIds.length;
+        }
+
+        public @Nullable ChannelUID target(int measurementIndex) {
+            return targets[measurementIndex];
+        }
+
+        public boolean hasDeviceProperties() {
+            return hasDeviceProperties;
+        }
+    }
+}
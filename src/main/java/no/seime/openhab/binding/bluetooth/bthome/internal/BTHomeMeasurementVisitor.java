@@ -0,0 +1,39 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Callback receiving the measurements found by the {@link BTHomeDecoder}, in the order they appear in the payload.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public interface BTHomeMeasurementVisitor {
+
+    /**
+     * A fixed size measurement.
+     *
+     * @param objectId BTHome object id (0-255)
+     * @param rawValue little endian value as sent on the wire, sign extended for signed object ids
+     * @param scale factor to multiply the raw value with to get the value in the unit of the object id
+     */
+    void onMeasurement(int objectId, long rawValue, double scale);
+
+    /**
+     * A variable length measurement (text or raw). The bytes are only valid for the duration of the call unless the
+     * caller keeps the source array alive.
+     */
+    void onBytes(int objectId, byte[] data, int offset, int length);
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.io.monitor.MeterRegistryProvider;
+import org.openhab.core.thing.ThingUID;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Ingestion metrics, published through the meter registry of openHAB core when enabled with the
+ * <code>metrics</code> binding setting. Binding wide gauges cover the handlers and the ingestion pipeline, the
+ * {@link DeviceMetrics} of every handler count its packets and time their processing, tagged with thing and bridge.
+ * Percentile histograms are only kept by the binding wide timers, as the buckets of every thing would add up to a
+ * large number of series.
+ *
+ * When disabled, or without a meter registry, handlers get metrics whose methods do nothing, so the hot path only
+ * pays for an empty call. Settings and registry changes apply to things initialized afterwards.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomeMetrics.class)
+@NonNullByDefault
+public class BTHomeMetrics {
+
+    private final BTHomeIngestionPipeline ingestionPipeline;
+    private final AtomicInteger handlers = new AtomicInteger();
+    private final List<Meter> bindingMeters = new ArrayList<>();
+    private @Nullable Timer bindingProcessing;
+    private @Nullable Timer bindingPriorityLatency;
+
+    private volatile @Nullable MeterRegistry registry;
+    private volatile boolean enabled;
+
+    @Activate
+    public BTHomeMetrics(@Reference BTHomeIngestionPipeline ingestionPipeline) {
+        this.ingestionPipeline = ingestionPipeline;
+    }
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    protected void setMeterRegistryProvider(MeterRegistryProvider meterRegistryProvider) {
+        setRegistry(meterRegistryProvider.getOHMeterRegistry());
+    }
+
+    protected void unsetMeterRegistryProvider(MeterRegistryProvider meterRegistryProvider) {
+        setRegistry(null);
+    }
+
+    synchronized void setRegistry(@Nullable MeterRegistry newRegistry) {
+        MeterRegistry oldRegistry = registry;
+        if (oldRegistry != null) {
+            bindingMeters.forEach(oldRegistry::remove);
+            bindingMeters.clear();
+        }
+        registry = newRegistry;
+        if (newRegistry != null) {
+            bindingMeters.add(Gauge.builder("bthome.handlers", handlers, AtomicInteger::get)
+                    .description("BTHome thing handlers alive").register(newRegistry));
+            bindingMeters.add(Gauge.builder("bthome.ingestion.queue", ingestionPipeline,
+                    BTHomeIngestionPipeline::getQueueDepth).description("Payloads waiting to be processed")
+                    .register(newRegistry));
+            bindingMeters.add(FunctionCounter.builder("bthome.ingestion.coalesced", ingestionPipeline,
+                    BTHomeIngestionPipeline::getCoalescedCount)
+                    .description("Payloads replaced by a newer payload before being processed").register(newRegistry));
+            Timer processing = Timer.builder("bthome.binding.processing")
+                    .description("Time to parse a packet and publish its states, all things")
+                    .publishPercentileHistogram().register(newRegistry);
+            Timer priorityLatency = Timer.builder("bthome.binding.priority.latency")
+                    .description("Time from reception until events and safety alarms are dispatched, all things")
+                    .publishPercentileHistogram().register(newRegistry);
+            bindingMeters.add(processing);
+            bindingMeters.add(priorityLatency);
+            bindingProcessing = processing;
+            bindingPriorityLatency = priorityLatency;
+        } else {
+            bindingProcessing = null;
+            bindingPriorityLatency = null;
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Create the metrics of a handler, to be closed when the handler is disposed
+     */
+    public synchronized DeviceMetrics register(ThingUID thingUID, @Nullable ThingUID bridgeUID) {
+        handlers.incrementAndGet();
+        MeterRegistry localRegistry = registry;
+        Timer localProcessing = bindingProcessing;
+        Timer localPriorityLatency = bindingPriorityLatency;
+        if (!enabled || localRegistry == null || localProcessing == null || localPriorityLatency == null) {
+            return new DeviceMetrics(handlers);
+        }
+        Tags tags = Tags.of("thing", thingUID.getAsString(), "bridge",
+                bridgeUID != null ? bridgeUID.getAsString() : "none");
+        return new MicrometerDeviceMetrics(handlers, localRegistry, tags, localProcessing, localPriorityLatency);
+    }
+
+    /**
+     * Metrics of a single handler. This base class only counts the handler as alive.
+     */
+    public static class DeviceMetrics {
+        private final @Nullable AtomicInteger handlers;
+
+        /**
+         * Metrics doing nothing at all
+         */
+        public static final DeviceMetrics NONE = new DeviceMetrics(null);
+
+        private DeviceMetrics(@Nullable AtomicInteger handlers) {
+            this.handlers = handlers;
+        }
+
+        /**
+         * @return true if processing should be timed
+         */
+        public boolean isEnabled() {
+            return false;
+        }
+
+        public void packetReceived() {
+        }
+
+        public void duplicateDropped() {
+        }
+
+        public void encryptedRejected() {
+        }
+
+        public void parseError() {
+        }
+
+        public void statePublished() {
+        }
+
+        public void processed(long nanos) {
+        }
+
+        /**
+         * @param nanos from reception of the advertisement until its events and safety alarms were dispatched
+         */
+        public void priorityDispatched(long nanos) {
+        }
+
+        public void close() {
+            AtomicInteger localHandlers = handlers;
+            if (localHandlers != null) {
+                localHandlers.decrementAndGet();
+            }
+        }
+    }
+
+    private static class MicrometerDeviceMetrics extends DeviceMetrics {
+        private final MeterRegistry registry;
+        private final Counter received;
+        private final Counter duplicates;
+        private final Counter rejected;
+        private final Counter parseErrors;
+        private final Counter published;
+        private final Timer processing;
+        private final Timer priorityLatency;
+        // Shared by all things, with histogram
+        private final Timer bindingProcessing;
+        private final Timer bindingPriorityLatency;
+
+        private MicrometerDeviceMetrics(AtomicInteger handlers, MeterRegistry registry, Tags tags,
+                Timer bindingProcessing, Timer bindingPriorityLatency) {
+            super(handlers);
+            this.registry = registry;
+            this.bindingProcessing = bindingProcessing;
+            this.bindingPriorityLatency = bindingPriorityLatency;
+            received = Counter.builder("bthome.packets.received").description("Advertisements with BTHome data")
+                    .tags(tags).register(registry);
+            duplicates = Counter.builder("bthome.packets.duplicate")
+                    .description("Advertisements dropped as repeated, by content or packet id").tags(tags)
+                    .register(registry);
+            rejected = Counter.builder("bthome.packets.rejected")
+                    .description("Packets rejected by encryption: missing or wrong key, replayed counter, unencrypted")
+                    .tags(tags).register(registry);
+            parseErrors = Counter.builder("bthome.packets.errors").description("Packets that could not be parsed")
+                    .tags(tags).register(registry);
+            published = Counter.builder("bthome.states.published").description("Channel states published")
+                    .tags(tags).register(registry);
+            processing = Timer.builder("bthome.packets.processing")
+                    .description("Time to parse a packet and publish its states").tags(tags).register(registry);
+            priorityLatency = Timer.builder("bthome.priority.latency")
+                    .description("Time from reception until events and safety alarms are dispatched").tags(tags)
+                    .register(registry);
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public void packetReceived() {
+            received.increment();
+        }
+
+        @Override
+        public void duplicateDropped() {
+            duplicates.increment();
+        }
+
+        @Override
+        public void encryptedRejected() {
+            rejected.increment();
+        }
+
+        @Override
+        public void parseError() {
+            parseErrors.increment();
+        }
+
+        @Override
+        public void statePublished() {
+            published.increment();
+        }
+
+        @Override
+        public void processed(long nanos) {
+            processing.record(nanos, TimeUnit.NANOSECONDS);
+            bindingProcessing.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void priorityDispatched(long nanos) {
+            priorityLatency.record(nanos, TimeUnit.NANOSECONDS);
+            bindingPriorityLatency.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            for (Meter meter : List.of(received, duplicates, rejected, parseErrors, published, processing,
+                    priorityLatency)) {
+                registry.remove(meter);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Reusable, primitive backed holder for the measurements of one decoded packet. A handler keeps one instance and
+ * clears it before each call to {@link BTHomeDecoder}, so steady state decoding does not allocate.
+ *
+ * Variable length measurements reference the source array passed to the decoder, which must not be modified while
+ * the packet is in use.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomePacket implements BTHomeMeasurementVisitor {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final byte[] EMPTY = new byte[0];
+
+    private int size;
+    private int[] objectIds = new int[INITIAL_CAPACITY];
+    private long[] rawValues = new long[INITIAL_CAPACITY];
+    private double[] scales = new double[INITIAL_CAPACITY];
+    private int[] byteOffsets = new int[INITIAL_CAPACITY];
+    private int[] byteLengths = new int[INITIAL_CAPACITY];
+    private byte[] source = EMPTY;
+
+    public void clear() {
+        size = 0;
+        source = EMPTY;
+    }
+
+    @Override
+    public void onMeasurement(int objectId, long rawValue, double scale) {
+        ensureCapacity();
+        objectIds[size] = objectId;
+        rawValues[size] = rawValue;
+        scales[size] = scale;
+        size++;
+    }
+
+    @Override
+    public void onBytes(int objectId, byte[] data, int offset, int length) {
+        ensureCapacity();
+        source = data;
+        objectIds[size] = objectId;
+        rawValues[size] = 0;
+        scales[size] = 1;
+        byteOffsets[size] = offset;
+        byteLengths[size] = length;
+        size++;
+    }
+
+    private void ensureCapacity() {
+        if (size == objectIds.length) {
+            int newCapacity = size * 2;
+            objectIds = Arrays.copyOf(objectIds, newCapacity);
+            rawValues = Arrays.copyOf(rawValues, newCapacity);
+            scales = Arrays.copyOf(scales, newCapacity);
+            byteOffsets = Arrays.copyOf(byteOffsets, newCapacity);
+            byteLengths = Arrays.copyOf(byteLengths, newCapacity);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int objectId(int index) {
+        return objectIds[index];
+    }
+
+    public long rawValue(int index) {
+        return rawValues[index];
+    }
+
+    public double scale(int index) {
+        return scales[index];
+    }
+
+    /**
+     * @return the raw value if the object id is not scaled, otherwise the scaled value
+     */
+    public Number value(int index) {
+        double scale = scales[index];
+        if (scale == 1) {
+            return rawValues[index];
+        }
+        return rawValues[index] * scale;
+    }
+
+    public String stringValue(int index) {
+        return new String(source, byteOffsets[index], byteLengths[index], StandardCharsets.UTF_8);
+    }
+
+    public byte[] bytesValue(int index) {
+        return Arrays.copyOfRange(source, byteOffsets[index], byteOffsets[index] + byteLengths[index]);
+    }
+
+    /**
+     * @return index of the first measurement with the given object id, or -1 if none
+     */
+    public int indexOf(int objectId) {
+        for (int i = 0; i < size; i++) {
+            if (objectIds[i] == objectId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Sliding window over the 8 bit packet ids of a device, recognizing repeated packets and packets arriving after newer
+ * ones, as happens when several proxies forward the same advertisements with different delays.
+ *
+ * Ids are ordered with modular arithmetic, so the window follows the wraparound from 255 to 0: an id up to 127 ahead of
+ * the newest id is newer, anything else is older. The ids seen among the last {@link #SIZE} are kept as a bitmap, so
+ * a late packet not seen before is told apart from a repeat: its states are outdated, but its events are not. Older
+ * ids outside the window cannot be told apart from a restarted device, so the window restarts from such an id when
+ * {@link #RESYNC_THRESHOLD} of them arrive in a row.
+ *
+ * Reordering between proxies spans seconds at most, so after {@link #RESYNC_GAP_MILLIS} without hearing the newest id
+ * the window restarts from the next id, whatever it is. A device coming back after many missed packets, or restarting
+ * its counter just below the last id, is then followed right away.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomePacketIdWindow {
+
+    /** Newer than all packets seen */
+    public static final int NEW = 0;
+    /** Older than the newest packet, but not seen before */
+    public static final int LATE = 1;
+    /** Seen before, or too old */
+    public static final int DROP = 2;
+
+    static final int SIZE = Long.SIZE;
+    static final int RESYNC_THRESHOLD = 3;
+    static final long RESYNC_GAP_MILLIS = 5000;
+
+    private static final int ID_RANGE = 256;
+    private static final int HALF_RANGE = ID_RANGE / 2;
+    private static final long RESYNC_GAP_NANOS = TimeUnit.MILLISECONDS.toNanos(RESYNC_GAP_MILLIS);
+
+    // Newest accepted id, or -1 if none
+    private int newest = -1;
+    // Bit n set if id newest - n was accepted
+    private long seen;
+    private int outsideWindow;
+    // When the newest id was last received
+    private long newestNanos;
+
+    public void reset() {
+        newest = -1;
+        seen = 0;
+        outsideWindow = 0;
+    }
+
+    /**
+     * Classify a packet, and remember its id
+     *
+     * @param nowNanos {@link System#nanoTime()} when the packet was received
+     * @return {@link #NEW}, {@link #LATE} or {@link #DROP}
+     */
+    public int check(int packetId, long nowNanos) {
+        int id = packetId & 0xFF;
+        if (newest < 0 || nowNanos - newestNanos > RESYNC_GAP_NANOS) {
+            restart(id, nowNanos);
+            return NEW;
+        }
+        int ahead = (id - newest) & 0xFF;
+        if (ahead == 0) {
+            newestNanos = nowNanos;
+            return DROP;
+        }
+        if (ahead < HALF_RANGE) {
+            seen = ahead < SIZE ? (seen << ahead) | 1 : 1;
+            newest = id;
+            newestNanos = nowNanos;
+            outsideWindow = 0;
+            return NEW;
+        }
+        int behind = ID_RANGE - ahead;
+        if (behind < SIZE) {
+            long bit = 1L << behind;
+            if ((seen & bit) != 0) {
+                return DROP;
+            }
+            seen |= bit;
+            return LATE;
+        }
+        if (++outsideWindow >= RESYNC_THRESHOLD) {
+            restart(id, nowNanos);
+            return NEW;
+        }
+        return DROP;
+    }
+
+    private void restart(int id, long nowNanos) {
+        newest = id;
+        newestNanos = nowNanos;
+        seen = 1;
+        outsideWindow = 0;
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.common.ThreadPoolManager;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last BTHome payload of every thing across restarts, so the last known values can be restored when the
+ * thing is initialized instead of leaving the channels UNDEF until the device advertises again.
+ *
+ * Payloads are held in memory and written to a single binary file in the userdata folder once a minute when changed,
+ * and on deactivation. Each record is the thing UID, the receive time in epoch milliseconds and the raw payload.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomePayloadStore.class)
+@NonNullByDefault
+public class BTHomePayloadStore {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final long FLUSH_INTERVAL_SECONDS = 60;
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomePayloadStore.class);
+
+    private final Path file;
+    private final Map<String, Payload> payloads = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+    private final @Nullable ScheduledFuture<?> flushJob;
+
+    @Activate
+    public BTHomePayloadStore() {
+        this(Path.of(OpenHAB.getUserDataFolder(), "bthome", "payloads.bin"),
+                ThreadPoolManager.getScheduledPool(ThreadPoolManager.THREAD_POOL_NAME_COMMON));
+    }
+
+    /**
+     * @param scheduler used for periodic writes, or null to only write on {@link #flush()}
+     */
+    BTHomePayloadStore(Path file, @Nullable ScheduledExecutorService scheduler) {
+        this.file = file;
+        load();
+        flushJob = scheduler != null
+                ? scheduler.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS,
+                        TimeUnit.SECONDS)
+                : null;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        ScheduledFuture<?> localFlushJob = flushJob;
+        if (localFlushJob != null) {
+            localFlushJob.cancel(false);
+        }
+        flush();
+    }
+
+    public void put(String thingUID, byte[] payload, long receivedEpochMillis) {
+        payloads.put(thingUID, new Payload(payload, receivedEpochMillis));
+        dirty = true;
+    }
+
+    /**
+     * @return the last payload of the thing if received within the maximum age, otherwise null
+     */
+    public @Nullable Payload get(String thingUID, long maxAgeMillis, long nowEpochMillis) {
+        Payload payload = payloads.get(thingUID);
+        if (payload == null || nowEpochMillis - payload.getReceivedEpochMillis() > maxAgeMillis) {
+            return null;
+        }
+        return payload;
+    }
+
+    public void remove(String thingUID) {
+        if (payloads.remove(thingUID) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Write the payloads to the file if changed since last write
+     */
+    synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        try {
+            Files.createDirectories(file.getParent());
+            Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeByte(FORMAT_VERSION);
+                for (Map.Entry<String, Payload> entry : payloads.entrySet()) {
+                    Payload payload = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(payload.getReceivedEpochMillis());
+                    out.writeShort(payload.getData().length);
+                    out.write(payload.getData());
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to write last BTHome payloads to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readUnsignedByte();
+            if (version != FORMAT_VERSION) {
+                logger.debug("Ignoring last BTHome payloads in unknown format {}", version);
+                return;
+            }
+            while (true) {
+                String thingUID;
+                try {
+                    thingUID = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                long receivedEpochMillis = in.readLong();
+                byte[] data = new byte[in.readUnsignedShort()];
+                in.readFully(data);
+                payloads.put(thingUID, new Payload(data, receivedEpochMillis));
+            }
+            logger.debug("Loaded last BTHome payloads of {} things", payloads.size());
+        } catch (IOException e) {
+            logger.warn("Unable to read last BTHome payloads from {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Raw service data payload and when it was received
+     */
+    public static final class Payload {
+        private final byte[] data;
+        private final long receivedEpochMillis;
+
+        Payload(byte[] data, long receivedEpochMillis) {
+            this.data = data;
+            this.receivedEpochMillis = receivedEpochMillis;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public long getReceivedEpochMillis() {
+            return receivedEpochMillis;
+        }
+    }
+}
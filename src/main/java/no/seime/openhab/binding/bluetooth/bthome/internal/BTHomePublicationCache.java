@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.types.State;
+
+/**
+ * Per handler cache of the last state published to each channel, used to apply the publication policy configured on
+ * the channel (see {@link BTHomeChannelConfiguration}). Channels without configuration publish every value.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomePublicationCache {
+
+    private final Map<ChannelUID, Entry> entries = new HashMap<>();
+    // Channels set to UNDEF and not published since
+    private final Set<ChannelUID> undefined = new HashSet<>();
+
+    /**
+     * Decide whether a new state should be published, and if so record it as the last published state.
+     *
+     * @param channel the channel, used to read the policy the first time the channel is seen
+     */
+    public synchronized boolean shouldPublish(ChannelUID channelUID, @Nullable Channel channel, State state,
+            long nowNanos) {
+        Entry entry = entries.get(channelUID);
+        if (entry == null) {
+            entry = new Entry(channel != null ? channel.getConfiguration().as(BTHomeChannelConfiguration.class)
+                    : new BTHomeChannelConfiguration());
+            entries.put(channelUID, entry);
+        }
+        if (entry.changeOnly && !entry.hasChanged(state, nowNanos)) {
+            return false;
+        }
+        entry.record(state, nowNanos);
+        undefined.remove(channelUID);
+        return true;
+    }
+
+    /**
+     * Decide whether UNDEF should be published to a channel, and if so record the channel as UNDEF. The next value of
+     * the channel is published.
+     *
+     * @param keepPublished leave channels with a published state as they are
+     * @return false if the channel is UNDEF already, or has a published state to keep
+     */
+    public synchronized boolean shouldPublishUndef(ChannelUID channelUID, boolean keepPublished) {
+        Entry entry = entries.get(channelUID);
+        if (entry != null && entry.lastState != null) {
+            if (keepPublished) {
+                return false;
+            }
+            entry.lastState = null;
+        }
+        return undefined.add(channelUID);
+    }
+
+    /**
+     * @return the last state published to the channel, or null if nothing has been published since the last UNDEF
+     */
+    public synchronized @Nullable State getLastPublished(ChannelUID channelUID) {
+        Entry entry = entries.get(channelUID);
+        return entry != null ? entry.lastState : null;
+    }
+
+    /**
+     * Forget states and policies, used when the channel configuration may have changed. Channels known to be UNDEF
+     * are remembered.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Entry {
+        private final boolean changeOnly;
+        private final double deadbandAbsolute;
+        private final double deadbandFraction;
+        private final long maxPublishIntervalNanos;
+
+        private @Nullable State lastState;
+        private double lastValue = Double.NaN;
+        private long lastPublishedNanos;
+
+        private Entry(BTHomeChannelConfiguration config) {
+            changeOnly = BTHomeChannelConfiguration.PUBLISH_POLICY_CHANGE.equals(config.publishPolicy);
+            deadbandAbsolute = config.deadbandAbsolute;
+            deadbandFraction = config.deadbandPercent / 100;
+            maxPublishIntervalNanos = TimeUnit.SECONDS.toNanos(config.maxPublishIntervalSeconds);
+        }
+
+        private boolean hasChanged(State state, long nowNanos) {
+            State last = lastState;
+            if (last == null) {
+                return true;
+            }
+            if (maxPublishIntervalNanos > 0 && nowNanos - lastPublishedNanos >= maxPublishIntervalNanos) {
+                return true;
+            }
+            if (state instanceof Number number && !Double.isNaN(lastValue)
+                    && last.getClass() == state.getClass()) {
+                double delta = Math.abs(number.doubleValue() - lastValue);
+                return delta > 0 && delta > deadbandAbsolute && delta > deadbandFraction * Math.abs(lastValue);
+            }
+            return !state.equals(last);
+        }
+
+        private void record(State state, long nowNanos) {
+            lastState = state;
+            lastValue = state instanceof Number number ? number.doubleValue() : Double.NaN;
+            lastPublishedNanos = nowNanos;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.measure.Unit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.types.State;
+
+/**
+ * Per handler rates of cumulative channels (see {@link BTHomeDerivedRate}), computed from the last {@link #SIZE}
+ * values of each channel kept in a ring buffer of primitive arrays.
+ *
+ * Raw values are unwrapped when the counter rolls over at the size of the field, 2^16 for a uint16. A counter going
+ * back more than half the range, or jumping ahead more than half, is taken as a reset of the device: the buffer starts
+ * over and no rate is published until the next value.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeRateTracker {
+
+    static final int SIZE = 8;
+    // Rates over a shorter span are mostly noise
+    static final long MIN_SPAN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<ChannelUID, Samples> samples = new HashMap<>();
+
+    /**
+     * Record a value of a cumulative channel
+     *
+     * @param rawValue the value as decoded, before scaling
+     * @return the rate over the buffered values, or null if it can't be computed yet
+     */
+    public synchronized @Nullable State sample(ChannelUID sourceUID, BTHomeDerivedRate derivedRate,
+            BTHomeConversionTable.Conversion conversion, long rawValue, long nowNanos) {
+        Samples channelSamples = samples.get(sourceUID);
+        if (channelSamples == null) {
+            channelSamples = new Samples(1L << (8 * BTHomeDecoder.fixedLength(conversion.getObjectId())));
+            samples.put(sourceUID, channelSamples);
+        }
+        if (!channelSamples.add(rawValue, nowNanos)) {
+            return null;
+        }
+        double perSecond = channelSamples.perSecond();
+        if (Double.isNaN(perSecond)) {
+            return null;
+        }
+        perSecond *= conversion.getScale();
+        Unit<?> targetUnit = derivedRate.getUnit();
+        if (targetUnit == null) {
+            return new DecimalType(perSecond * 60);
+        }
+        Unit<?> sourceUnit = conversion.getUnit();
+        if (sourceUnit == null) {
+            return null;
+        }
+        QuantityType<?> rate = new QuantityType<>(perSecond, sourceUnit.divide(Units.SECOND));
+        QuantityType<?> converted = rate.toUnit(targetUnit);
+        return converted != null ? converted : rate;
+    }
+
+    /**
+     * Forget all values, for instance when the device has been offline
+     */
+    public synchronized void clear() {
+        samples.clear();
+    }
+
+    private static class Samples {
+        private final long range;
+        private final long[] nanos = new long[SIZE];
+        // Unwrapped raw values
+        private final long[] totals = new long[SIZE];
+        private int newest = -1;
+        private int count;
+        private long lastRaw;
+
+        private Samples(long range) {
+            this.range = range;
+        }
+
+        /**
+         * @return false if the value started the buffer over
+         */
+        private boolean add(long rawValue, long nowNanos) {
+            long delta = (rawValue - lastRaw) & (range - 1);
+            if (count == 0 || delta >= range / 2) {
+                newest = 0;
+                count = 1;
+                nanos[0] = nowNanos;
+                totals[0] = rawValue;
+                lastRaw = rawValue;
+                return false;
+            }
+            long total = totals[newest] + delta;
+            newest = (newest + 1) % SIZE;
+            nanos[newest] = nowNanos;
+            totals[newest] = total;
+            count = Math.min(count + 1, SIZE);
+            lastRaw = rawValue;
+            return true;
+        }
+
+        /**
+         * @return raw units per second over the buffered values, or NaN if they span too short a time
+         */
+        private double perSecond() {
+            int oldest = (newest - count + 1 + SIZE) % SIZE;
+            long spanNanos = nanos[newest] - nanos[oldest];
+            if (spanNanos < MIN_SPAN_NANOS) {
+                return Double.NaN;
+            }
+            return (totals[newest] - totals[oldest]) / (spanNanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.ThreadPoolManager;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the initial work of many things over a ramp window, so a restart or a flapping Bluetooth proxy does not
+ * produce thousands of state updates and watchdog deadlines within the same second.
+ *
+ * Work is queued per thing, newer work replacing queued work of the same thing. The queue is drained in small
+ * batches, sized so the work queued when a burst starts completes within the ramp window.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomeStartupThrottle.class)
+@NonNullByDefault
+public class BTHomeStartupThrottle {
+
+    private static final long TICK_MILLIS = 250;
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeStartupThrottle.class);
+
+    private final @Nullable ScheduledExecutorService scheduler;
+    private final Map<String, Runnable> queue = new LinkedHashMap<>();
+    private volatile long rampMillis;
+    private int batchSize;
+    private @Nullable ScheduledFuture<?> drainJob;
+
+    @Activate
+    public BTHomeStartupThrottle() {
+        this(ThreadPoolManager.getScheduledPool(ThreadPoolManager.THREAD_POOL_NAME_COMMON),
+                TimeUnit.SECONDS.toMillis(new BTHomeBindingConfiguration().startupRampSeconds));
+    }
+
+    /**
+     * @param scheduler drains the queue, or null to only drain on {@link #drain()}
+     */
+    BTHomeStartupThrottle(@Nullable ScheduledExecutorService scheduler, long rampMillis) {
+        this.scheduler = scheduler;
+        this.rampMillis = rampMillis;
+    }
+
+    @Deactivate
+    public synchronized void deactivate() {
+        queue.clear();
+        stopDrain();
+    }
+
+    /**
+     * @param rampSeconds window to spread work over, 0 runs work immediately
+     */
+    public void setRampSeconds(int rampSeconds) {
+        rampMillis = TimeUnit.SECONDS.toMillis(rampSeconds);
+    }
+
+    /**
+     * Run work for a thing within the ramp window, replacing work queued for the thing
+     */
+    public void submit(String key, Runnable work) {
+        synchronized (this) {
+            if (rampMillis > 0) {
+                queue.put(key, work);
+                startDrain();
+                return;
+            }
+        }
+        run(work);
+    }
+
+    /**
+     * Drop work queued for a thing
+     */
+    public synchronized void cancel(String key) {
+        queue.remove(key);
+    }
+
+    /**
+     * Run the next batch of work
+     */
+    void drain() {
+        List<Runnable> batch = new ArrayList<>();
+        synchronized (this) {
+            if (queue.isEmpty()) {
+                stopDrain();
+                return;
+            }
+            long localRampMillis = Math.max(TICK_MILLIS, rampMillis);
+            // Rounded up, so a burst completes within the ramp window
+            long burstBatchSize = (queue.size() * TICK_MILLIS + localRampMillis - 1) / localRampMillis;
+            batchSize = Math.max(batchSize, (int) burstBatchSize);
+            Iterator<Runnable> iterator = queue.values().iterator();
+            while (batch.size() < batchSize && iterator.hasNext()) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+        }
+        batch.forEach(this::run);
+    }
+
+    private void run(Runnable work) {
+        try {
+            work.run();
+        } catch (RuntimeException e) {
+            logger.warn("Error running BTHome initialization work", e);
+        }
+    }
+
+    private void startDrain() {
+        ScheduledExecutorService localScheduler = scheduler;
+        if (drainJob == null && localScheduler != null) {
+            drainJob = localScheduler.scheduleWithFixedDelay(this::drain, TICK_MILLIS, TICK_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void stopDrain() {
+        ScheduledFuture<?> localDrainJob = drainJob;
+        if (localDrainJob != null) {
+            localDrainJob.cancel(false);
+            drainJob = null;
+        }
+        batchSize = 0;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.binding.builder.ThingBuilder;
+
+/**
+ * Collects property and channel changes to a thing so they can be applied with a single
+ * <code>updateThing</code>. Every thing update rebuilds the thing, persists it and fires registry events, so
+ * properties equal to the current ones are not recorded at all.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class BTHomeThingMutations {
+
+    private final Map<String, String> pendingProperties = new HashMap<>();
+    private final List<Channel> pendingChannels = new ArrayList<>();
+
+    /**
+     * Record the properties that differ from the current properties of the thing
+     */
+    public synchronized void mergeProperties(Map<String, String> currentProperties, Map<String, String> properties) {
+        properties.forEach((key, value) -> {
+            if (Objects.equals(currentProperties.get(key), value)) {
+                pendingProperties.remove(key);
+            } else {
+                pendingProperties.put(key, value);
+            }
+        });
+    }
+
+    public synchronized void addChannels(List<Channel> channels) {
+        pendingChannels.addAll(channels);
+    }
+
+    public synchronized boolean hasPendingChannel(String channelId) {
+        for (Channel channel : pendingChannels) {
+            if (channel.getUID().getId().equals(channelId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized boolean hasPendingChannels() {
+        return !pendingChannels.isEmpty();
+    }
+
+    public synchronized boolean isEmpty() {
+        return pendingProperties.isEmpty() && pendingChannels.isEmpty();
+    }
+
+    /**
+     * Apply and clear the pending changes
+     *
+     * @param builder builder of the current thing
+     * @return the updated thing, or null if nothing changed
+     */
+    public synchronized @Nullable Thing apply(Thing thing, ThingBuilder builder) {
+        if (isEmpty()) {
+            return null;
+        }
+        if (!pendingProperties.isEmpty()) {
+            Map<String, String> properties = new HashMap<>(thing.getProperties());
+            properties.putAll(pendingProperties);
+            builder.withProperties(properties);
+        }
+        for (Channel channel : pendingChannels) {
+            builder.withChannel(channel);
+        }
+        clear();
+        return builder.build();
+    }
+
+    public synchronized void clear() {
+        pendingProperties.clear();
+        pendingChannels.clear();
+    }
+}
@@ -211,16 +211,42 @@ public enum BTHomeTypeMapping {
         this.advanced = advanced;
     }
 
+    private static final @Nullable BTHomeTypeMapping[] BY_OBJECT_ID = new BTHomeTypeMapping[256];
+
+    static {
+        for (BTHomeTypeMapping typeMapping : values()) {
+            BY_OBJECT_ID[typeMapping.getObjectId()] = typeMapping;
+        }
+    }
+
     @Nullable
     public static BTHomeTypeMapping fromBthomeObjectId(BthomeServiceData.BthomeObjectId bthomeObjectId) {
+        return fromObjectId((int) bthomeObjectId.id());
+    }
+
+    @Nullable
+    public static BTHomeTypeMapping fromObjectId(int objectId) {
+        return BY_OBJECT_ID[objectId & 0xFF];
+    }
+
+    /**
+     * @return the first mapping using the channel name (several mappings share a channel name, differing in
+     *         resolution only), or null if none
+     */
+    @Nullable
+    public static BTHomeTypeMapping fromChannelName(String channelName) {
         for (BTHomeTypeMapping typeMapping : values()) {
-            if (typeMapping.bthomeObjectId == bthomeObjectId) {
+            if (typeMapping.channelName.equals(channelName)) {
                 return typeMapping;
             }
         }
         return null;
     }
 
+    public int getObjectId() {
+        return (int) bthomeObjectId.id();
+    }
+
     public String getCategory() {
         return category;
     }
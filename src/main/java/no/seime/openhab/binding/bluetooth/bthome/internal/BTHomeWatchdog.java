@@ -0,0 +1,265 @@
+/**
+ * Copyright (c) 2010-2022 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.NamedThreadFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binding wide watchdog detecting devices that stopped advertising, replacing one periodic task per thing.
+ *
+ * Receiving a packet only writes the last seen timestamp of the {@link Registration}. A single thread advances a
+ * hashed timing wheel once per second. When the slot of a registration comes up, the registration is either moved to
+ * the slot of its new deadline (the device was seen in the meantime) or expired, so every tick costs work proportional
+ * to the registrations due in that slot. Expired registrations leave the wheel and are armed again by the next packet.
+ *
+ * Other periodic work of the handlers, such as closing aggregation windows, runs on the same tick through
+ * {@link #addTickListener}.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(service = BTHomeWatchdog.class)
+@NonNullByDefault
+public class BTHomeWatchdog {
+
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int WHEEL_SIZE = 4096;
+
+    private final Logger logger = LoggerFactory.getLogger(BTHomeWatchdog.class);
+
+    private final LongSupplier clock;
+    private final @Nullable ScheduledExecutorService executor;
+
+    // Only accessed by the tick thread
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Registration>[] wheel = new ArrayDeque[WHEEL_SIZE];
+    private long currentTick;
+    private final long startNanos;
+
+    // Registrations to be placed in the wheel by the tick thread
+    private final Queue<Registration> pending = new ConcurrentLinkedQueue<>();
+    private final Set<LongConsumer> tickListeners = new CopyOnWriteArraySet<>();
+
+    @Activate
+    public BTHomeWatchdog() {
+        this.clock = System::nanoTime;
+        this.startNanos = clock.getAsLong();
+        ScheduledExecutorService localExecutor = Executors
+                .newSingleThreadScheduledExecutor(new NamedThreadFactory("bthome-watchdog"));
+        localExecutor.scheduleAtFixedRate(this::tick, TICK_NANOS, TICK_NANOS, TimeUnit.NANOSECONDS);
+        this.executor = localExecutor;
+    }
+
+    /**
+     * Create a watchdog without a thread, advanced by calling {@link #tick()}
+     */
+    BTHomeWatchdog(LongSupplier clock) {
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+        this.executor = null;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        ScheduledExecutorService localExecutor = executor;
+        if (localExecutor != null) {
+            localExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Start watching a device. The device counts as seen now.
+     *
+     * @param timeoutNanos time without packets after which the device is considered gone
+     * @param onExpired called on the watchdog thread when the timeout elapses, once until the device is seen again
+     */
+    public Registration register(String name, long timeoutNanos, Runnable onExpired) {
+        Registration registration = new Registration(name, timeoutNanos, onExpired, clock.getAsLong());
+        pending.add(registration);
+        return registration;
+    }
+
+    /**
+     * @param listener called on the watchdog thread once per tick with the current {@link System#nanoTime()}
+     */
+    public void addTickListener(LongConsumer listener) {
+        tickListeners.add(listener);
+    }
+
+    public void removeTickListener(LongConsumer listener) {
+        tickListeners.remove(listener);
+    }
+
+    /**
+     * Advance the wheel to the current time, expiring due registrations
+     */
+    synchronized void tick() {
+        long now = clock.getAsLong();
+        long targetTick = (now - startNanos) / TICK_NANOS;
+        while (currentTick < targetTick) {
+            currentTick++;
+            placePending(now);
+            ArrayDeque<Registration> slot = wheel[(int) (currentTick % WHEEL_SIZE)];
+            if (slot == null) {
+                continue;
+            }
+            for (int i = slot.size(); i > 0; i--) {
+                Registration registration = slot.poll();
+                if (registration.cancelled) {
+                    registration.slotIndex = -1;
+                    continue;
+                }
+                if (registration.remainingRounds > 0) {
+                    registration.remainingRounds--;
+                    slot.add(registration);
+                } else {
+                    registration.slotIndex = -1;
+                    checkExpired(registration, now);
+                }
+            }
+        }
+        placePending(now);
+        for (LongConsumer listener : tickListeners) {
+            try {
+                listener.accept(now);
+            } catch (RuntimeException e) {
+                logger.warn("Error handling watchdog tick", e);
+            }
+        }
+    }
+
+    private void checkExpired(Registration registration, long now) {
+        if (now - registration.lastSeenNanos < registration.timeoutNanos) {
+            place(registration, now);
+            return;
+        }
+        registration.armed.set(false);
+        // A packet may have arrived after the check above. If it armed the registration itself it is pending already
+        if (now - registration.lastSeenNanos < registration.timeoutNanos) {
+            if (registration.armed.compareAndSet(false, true)) {
+                place(registration, now);
+            }
+            return;
+        }
+        try {
+            registration.onExpired.run();
+        } catch (RuntimeException e) {
+            logger.warn("[{}] Error handling watchdog expiry", registration.name, e);
+        }
+    }
+
+    private void placePending(long now) {
+        Registration registration;
+        while ((registration = pending.poll()) != null) {
+            if (!registration.cancelled) {
+                place(registration, now);
+            }
+        }
+    }
+
+    private void place(Registration registration, long now) {
+        if (registration.slotIndex >= 0) {
+            // Already in the wheel, the timeout was changed
+            ArrayDeque<Registration> current = wheel[registration.slotIndex];
+            if (current != null) {
+                current.remove(registration);
+            }
+        }
+        long remainingNanos = registration.lastSeenNanos + registration.timeoutNanos - now;
+        long ticks = Math.max(1, (remainingNanos + TICK_NANOS - 1) / TICK_NANOS);
+        registration.remainingRounds = (ticks - 1) / WHEEL_SIZE;
+        int index = (int) ((currentTick + ticks) % WHEEL_SIZE);
+        ArrayDeque<Registration> slot = wheel[index];
+        if (slot == null) {
+            slot = new ArrayDeque<>();
+            wheel[index] = slot;
+        }
+        slot.add(registration);
+        registration.slotIndex = index;
+    }
+
+    /**
+     * Watchdog entry of a single device
+     */
+    public final class Registration {
+        private final String name;
+        private volatile long timeoutNanos;
+        private final Runnable onExpired;
+        private final AtomicBoolean armed = new AtomicBoolean(true);
+        private volatile long lastSeenNanos;
+        private volatile boolean cancelled;
+        // Only accessed by the tick thread
+        private long remainingRounds;
+        private int slotIndex = -1;
+
+        private Registration(String name, long timeoutNanos, Runnable onExpired, long lastSeenNanos) {
+            this.name = name;
+            this.timeoutNanos = timeoutNanos;
+            this.onExpired = onExpired;
+            this.lastSeenNanos = lastSeenNanos;
+        }
+
+        /**
+         * Record that the device was seen now
+         */
+        public void touch() {
+            lastSeenNanos = clock.getAsLong();
+            if (!armed.get() && !cancelled && armed.compareAndSet(false, true)) {
+                pending.add(this);
+            }
+        }
+
+        /**
+         * Change the timeout. A shorter timeout moves the registration to its new deadline on the next tick.
+         */
+        public void setTimeoutNanos(long timeoutNanos) {
+            long previousTimeoutNanos = this.timeoutNanos;
+            if (timeoutNanos == previousTimeoutNanos) {
+                return;
+            }
+            this.timeoutNanos = timeoutNanos;
+            if (timeoutNanos < previousTimeoutNanos && armed.get() && !cancelled) {
+                pending.add(this);
+            }
+        }
+
+        public long getTimeoutNanos() {
+            return timeoutNanos;
+        }
+
+        /**
+         * Stop watching the device. The entry is dropped from the wheel when its slot comes up.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
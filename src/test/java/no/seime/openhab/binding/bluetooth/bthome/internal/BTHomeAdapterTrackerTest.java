@@ -0,0 +1,108 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeAdapterTrackerTest {
+
+    private static final String ADDRESS = "a4:c1:38:00:00:01";
+    private static final ThingUID KITCHEN = new ThingUID("bluetooth:esphome:kitchen");
+    private static final ThingUID HALL = new ThingUID("bluetooth:esphome:hall");
+
+    private final BTHomeAdapterTracker tracker = new BTHomeAdapterTracker();
+
+    @Test
+    void testBestAdapterChangesOnlyWhenClearlyStronger() {
+        BTHomeAdapterTracker.Registration registration = tracker.register(ADDRESS);
+        tracker.onCopy("A4:C1:38:00:00:01", KITCHEN, -70, 0);
+        tracker.onCopy("A4:C1:38:00:00:01", HALL, -80, 0);
+
+        assertEquals(KITCHEN, registration.takeChangedBestAdapter(0));
+        assertNull(registration.takeChangedBestAdapter(0));
+
+        // Slightly stronger is not enough
+        tracker.onCopy(ADDRESS, HALL, -58, 1);
+        assertNull(registration.takeChangedBestAdapter(1));
+        for (int i = 0; i < 30; i++) {
+            tracker.onCopy(ADDRESS, HALL, -60, 2);
+        }
+        assertEquals(HALL, registration.takeChangedBestAdapter(2));
+        assertEquals(Map.of(KITCHEN, -70, HALL, -60), registration.takeChangedRssiByAdapter(2));
+    }
+
+    @Test
+    void testRssiByAdapterChangesOnlyWhenClearlyMoved() {
+        BTHomeAdapterTracker.Registration registration = tracker.register(ADDRESS);
+        assertNull(registration.takeChangedRssiByAdapter(0));
+        tracker.onCopy(ADDRESS, KITCHEN, -70, 0);
+        assertEquals(Map.of(KITCHEN, -70), registration.takeChangedRssiByAdapter(0));
+
+        // Smoothed to -72
+        tracker.onCopy(ADDRESS, KITCHEN, -80, 1);
+        assertNull(registration.takeChangedRssiByAdapter(1));
+        for (int i = 0; i < 30; i++) {
+            tracker.onCopy(ADDRESS, KITCHEN, -80, 2);
+        }
+        assertEquals(Map.of(KITCHEN, -80), registration.takeChangedRssiByAdapter(2));
+
+        // Another adapter hears the device
+        tracker.onCopy(ADDRESS, HALL, -90, 3);
+        assertEquals(Map.of(KITCHEN, -80, HALL, -90), registration.takeChangedRssiByAdapter(3));
+        assertNull(registration.takeChangedRssiByAdapter(3));
+    }
+
+    @Test
+    void testStaleAdaptersAreIgnored() {
+        BTHomeAdapterTracker.Registration registration = tracker.register(ADDRESS);
+        tracker.onCopy(ADDRESS, KITCHEN, -50, 0);
+        long later = TimeUnit.MILLISECONDS.toNanos(BTHomeAdapterTracker.STALE_MILLIS) + 1;
+        tracker.onCopy(ADDRESS, HALL, -90, later);
+
+        assertEquals(HALL, registration.takeChangedBestAdapter(later));
+        assertEquals(Map.of(HALL, -90), registration.takeChangedRssiByAdapter(later));
+    }
+
+    @Test
+    void testCopiesWithinWindowAreDropped() {
+        BTHomeAdapterTracker.Registration registration = tracker.register(ADDRESS);
+        byte[] payload = new byte[] { 64, 1, 100 };
+        long window = TimeUnit.MILLISECONDS.toNanos(BTHomeAdapterTracker.COPY_WINDOW_MILLIS);
+
+        assertFalse(registration.isCopy(payload, 0));
+        assertTrue(registration.isCopy(payload.clone(), window - 1));
+        assertFalse(registration.isCopy(new byte[] { 64, 1, 99 }, window - 1));
+        assertFalse(registration.isCopy(payload, 2 * window));
+    }
+
+    @Test
+    void testSignalsAreDroppedWhenLastRegistrationIsClosed() {
+        BTHomeAdapterTracker.Registration first = tracker.register(ADDRESS);
+        BTHomeAdapterTracker.Registration second = tracker.register(ADDRESS);
+        tracker.onCopy(ADDRESS, KITCHEN, -70, 0);
+        first.close();
+        assertEquals(Map.of(KITCHEN, -70), second.takeChangedRssiByAdapter(0));
+
+        second.close();
+        tracker.onCopy(ADDRESS, KITCHEN, -70, 0);
+        assertNull(tracker.register(ADDRESS).takeChangedRssiByAdapter(0));
+    }
+
+    @Test
+    void testRssiByAdapterPropertyListsStrongestFirst() {
+        assertEquals("bluetooth:esphome:hall=-60,bluetooth:esphome:kitchen=-70",
+                BTHomeHandler.formatRssiByAdapter(Map.of(KITCHEN, -70, HALL, -60)));
+        assertEquals("", BTHomeHandler.formatRssiByAdapter(Map.of()));
+    }
+}
@@ -0,0 +1,133 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.types.State;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeAggregatorTest {
+
+    private final ChannelUID channelUID = new ChannelUID(
+            new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, "device"), "power");
+
+    private final BTHomeAggregator aggregator = new BTHomeAggregator();
+
+    @Test
+    void testValuesArePassedThroughWithoutWindow() {
+        Channel channel = createChannel(Map.of());
+        assertEquals(watt(10), aggregator.aggregate(channelUID, channel, watt(10), 0));
+        assertEquals(watt(20), aggregator.aggregate(channelUID, channel, watt(20), 1));
+    }
+
+    @Test
+    void testWindowsHaveFixedLength() {
+        Channel channel = createChannel(Map.of("aggregationWindowSeconds", 10));
+        assertNull(aggregator.aggregate(channelUID, channel, watt(10), seconds(0)));
+        assertNull(aggregator.aggregate(channelUID, channel, watt(20), seconds(5)));
+        // Closes the first window, and starts the next
+        assertEquals(watt(15), aggregator.aggregate(channelUID, channel, watt(30), seconds(10)));
+        assertNull(aggregator.aggregate(channelUID, channel, watt(40), seconds(11)));
+
+        Map<ChannelUID, State> published = new HashMap<>();
+        aggregator.flush(seconds(19), false, published::put);
+        assertEquals(Map.of(), published);
+        aggregator.flush(seconds(20), false, published::put);
+        assertEquals(Map.of(channelUID, watt(35)), published);
+    }
+
+    @Test
+    void testReducers() {
+        assertEquals(watt(10), aggregateWindow("min"));
+        assertEquals(watt(30), aggregateWindow("max"));
+        assertEquals(watt(20), aggregateWindow("last"));
+    }
+
+    @Test
+    void testEmptyWindowsCountZero() {
+        ChannelUID countUID = new ChannelUID(channelUID.getThingUID(), "count");
+        Channel channel = ChannelBuilder.create(countUID)
+                .withConfiguration(new Configuration(Map.of("aggregationWindowSeconds", 10, "aggregationReducer",
+                        "count")))
+                .build();
+        assertNull(aggregator.aggregate(countUID, channel, new DecimalType(5), seconds(0)));
+        assertNull(aggregator.aggregate(countUID, channel, new DecimalType(6), seconds(1)));
+
+        Map<ChannelUID, State> published = new HashMap<>();
+        aggregator.flush(seconds(10), false, published::put);
+        assertEquals(new DecimalType(2), published.get(countUID));
+        aggregator.flush(seconds(20), false, published::put);
+        assertEquals(new DecimalType(0), published.get(countUID));
+    }
+
+    @Test
+    void testValuesWithUnitAreNotCounted() {
+        Channel channel = createChannel(Map.of("aggregationWindowSeconds", 10, "aggregationReducer", "count"));
+        assertEquals(watt(10), aggregator.aggregate(channelUID, channel, watt(10), seconds(0)));
+    }
+
+    @Test
+    void testNonNumericStatesArePassedThrough() {
+        Channel channel = createChannel(Map.of("aggregationWindowSeconds", 10));
+        assertEquals(OnOffType.ON, aggregator.aggregate(channelUID, channel, OnOffType.ON, 0));
+    }
+
+    @Test
+    void testResetDropsOpenWindow() {
+        Channel channel = createChannel(Map.of("aggregationWindowSeconds", 10));
+        assertNull(aggregator.aggregate(channelUID, channel, watt(10), seconds(0)));
+        aggregator.reset();
+        assertNull(aggregator.aggregate(channelUID, channel, watt(20), seconds(10)));
+        assertEquals(watt(20), aggregator.aggregate(channelUID, channel, watt(30), seconds(20)));
+    }
+
+    @Test
+    void testOpenWindowsAreFlushedOnRequest() {
+        Channel channel = createChannel(Map.of("aggregationWindowSeconds", 10));
+        assertNull(aggregator.aggregate(channelUID, channel, watt(10), seconds(0)));
+
+        Map<ChannelUID, State> published = new HashMap<>();
+        aggregator.flush(seconds(1), true, published::put);
+        assertEquals(Map.of(channelUID, watt(10)), published);
+    }
+
+    private State aggregateWindow(String reducer) {
+        BTHomeAggregator windowAggregator = new BTHomeAggregator();
+        Channel channel = createChannel(Map.of("aggregationWindowSeconds", 10, "aggregationReducer", reducer));
+        windowAggregator.aggregate(channelUID, channel, watt(10), seconds(0));
+        windowAggregator.aggregate(channelUID, channel, watt(30), seconds(5));
+        windowAggregator.aggregate(channelUID, channel, watt(20), seconds(8));
+        Map<ChannelUID, State> published = new HashMap<>();
+        windowAggregator.flush(seconds(10), false, published::put);
+        return published.get(channelUID);
+    }
+
+    private Channel createChannel(Map<String, Object> configuration) {
+        return ChannelBuilder.create(channelUID).withConfiguration(new Configuration(configuration)).build();
+    }
+
+    private static long seconds(long seconds) {
+        return TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private static QuantityType<?> watt(double value) {
+        return new QuantityType<>(value, Units.WATT);
+    }
+}
@@ -0,0 +1,133 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.openhab.binding.bluetooth.BluetoothAdapter;
+import org.openhab.binding.bluetooth.BluetoothAddress;
+import org.openhab.binding.bluetooth.BluetoothDevice;
+import org.openhab.binding.bluetooth.BluetoothDeviceListener;
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeCaptureTest {
+
+    private static final byte[] MAC = BTHomeDecryptor.parseMac("A4:C1:38:00:00:01");
+
+    @TempDir
+    Path tempDir;
+
+    private final List<String> addresses = new ArrayList<>();
+    private final List<BluetoothScanNotification> notifications = new ArrayList<>();
+
+    @Test
+    void testRecordedAdvertisementsAreReplayed() throws IOException, InterruptedException {
+        Path file = tempDir.resolve("capture.bin");
+        BTHomeCaptureRecorder recorder = new BTHomeCaptureRecorder();
+        recorder.start(file);
+        recorder.record(MAC, -70, new byte[] { 64, 1, 100 });
+        recorder.record(MAC, Integer.MIN_VALUE, new byte[] { 64, 1, 99 });
+        recorder.stop();
+        // Not recording
+        recorder.record(MAC, -70, new byte[] { 64, 1, 98 });
+
+        long replayed = new BTHomeCaptureReplayer(file).replay(this::collect, BTHomeCaptureReplayer.MAX_SPEED);
+
+        assertEquals(2, replayed);
+        assertEquals(List.of("A4:C1:38:00:00:01", "A4:C1:38:00:00:01"), addresses);
+        assertEquals(-70, notifications.get(0).getRssi());
+        assertEquals(Integer.MIN_VALUE, notifications.get(1).getRssi());
+        assertArrayEquals(new byte[] { 64, 1, 99 },
+                notifications.get(1).getServiceData().get(BTHomeBindingConstants.SERVICEDATA_UUID));
+    }
+
+    @Test
+    void testRecordingAppendsAndTruncatedRecordIsIgnored() throws IOException, InterruptedException {
+        Path file = tempDir.resolve("capture.bin");
+        BTHomeCaptureRecorder recorder = new BTHomeCaptureRecorder();
+        recorder.start(file);
+        recorder.record(MAC, -70, new byte[] { 64, 1, 100 });
+        recorder.stop();
+        recorder.start(file);
+        recorder.record(MAC, -71, new byte[] { 64, 1, 99 });
+        recorder.stop();
+        // Length prefix of a record that was never written
+        Files.write(file, new byte[] { 0, 0, 0, 40, 1, 2 }, StandardOpenOption.APPEND);
+
+        assertEquals(2, new BTHomeCaptureReplayer(file).replay(this::collect, 1000));
+    }
+
+    @Test
+    void testAdvertisementsAreRecordedWithAddressOfDevice() throws IOException, InterruptedException {
+        BluetoothAdapter adapter = Mockito.mock(BluetoothAdapter.class);
+        when(adapter.getUID()).thenReturn(new ThingUID("bluetooth:bluez:hci0"));
+        BluetoothDevice device = Mockito.mock(BluetoothDevice.class);
+        when(device.getAddress()).thenReturn(new BluetoothAddress("A4:C1:38:00:00:02"));
+        when(device.getAdapter()).thenReturn(adapter);
+
+        Path file = tempDir.resolve("capture.bin");
+        BTHomeCaptureRecorder recorder = new BTHomeCaptureRecorder();
+        recorder.addBluetoothAdapter(adapter);
+        verify(adapter).addDiscoveryListener(recorder);
+        recorder.deviceDiscovered(device);
+        ArgumentCaptor<BluetoothDeviceListener> listener = ArgumentCaptor.forClass(BluetoothDeviceListener.class);
+        verify(device).addListener(listener.capture());
+
+        BluetoothScanNotification notification = new BluetoothScanNotification();
+        notification.getServiceData().put(BTHomeBindingConstants.SERVICEDATA_UUID, new byte[] { 64, 1, 100 });
+        // Not recording yet
+        listener.getValue().onScanRecordReceived(notification);
+        recorder.start(file);
+        listener.getValue().onScanRecordReceived(notification);
+        // Without BTHome data
+        listener.getValue().onScanRecordReceived(new BluetoothScanNotification());
+        recorder.stop();
+
+        assertEquals(1, new BTHomeCaptureReplayer(file).replay(this::collect, BTHomeCaptureReplayer.MAX_SPEED));
+        assertEquals(List.of("A4:C1:38:00:00:02"), addresses);
+
+        recorder.removeBluetoothAdapter(adapter);
+        verify(device).removeListener(listener.getValue());
+    }
+
+    @Test
+    void testRoamingAdaptersAreNotRecorded() {
+        BluetoothAdapter adapter = Mockito.mock(BluetoothAdapter.class);
+        when(adapter.getUID()).thenReturn(new ThingUID("bluetooth:roaming:ctrl"));
+
+        BTHomeCaptureRecorder recorder = new BTHomeCaptureRecorder();
+        recorder.addBluetoothAdapter(adapter);
+        verify(adapter, never()).addDiscoveryListener(recorder);
+    }
+
+    @Test
+    void testOtherFilesAreRejected() throws IOException {
+        Path file = tempDir.resolve("other.bin");
+        Files.write(file, new byte[] { 1, 2, 3, 4, 5, 6 });
+        assertThrows(IOException.class, () -> new BTHomeCaptureReplayer(file));
+    }
+
+    private void collect(String address, BluetoothScanNotification notification) {
+        addresses.add(address);
+        notifications.add(notification);
+    }
+}
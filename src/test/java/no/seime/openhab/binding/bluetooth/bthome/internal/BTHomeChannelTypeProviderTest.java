@@ -0,0 +1,157 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openhab.core.storage.Storage;
+import org.openhab.core.storage.StorageService;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.type.ChannelType;
+import org.openhab.core.thing.type.ChannelTypeUID;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@ExtendWith(MockitoExtension.class)
+class BTHomeChannelTypeProviderTest {
+
+    private static final ThingUID THING_1 = new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, "a4c138000001");
+    private static final ThingUID THING_2 = new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, "a4c138000002");
+
+    private @Mock StorageService storageService;
+    private @Mock ScheduledExecutorService scheduler;
+
+    private final Map<String, MapStorage<?>> storages = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() {
+        Mockito.lenient()
+                .doAnswer(invocation -> storages.computeIfAbsent(invocation.getArgument(0), k -> new MapStorage<>()))
+                .when(storageService).getStorage(anyString(), any());
+    }
+
+    @Test
+    void testThingIdOfThingChannelType() {
+        assertEquals("a4c138000001", BTHomeChannelTypeProvider.thingIdOfThingChannelType(
+                BTHomeChannelTypeProvider.thingChannelTypeUID(THING_1, "battery-low")));
+        assertEquals("a4c138000001", BTHomeChannelTypeProvider.thingIdOfThingChannelType(
+                BTHomeChannelTypeProvider.thingChannelTypeUID(THING_1, "temperature_2")));
+        assertNull(BTHomeChannelTypeProvider.thingIdOfThingChannelType(
+                BTHomeChannelTypeProvider.sharedChannelTypeUID(BTHomeTypeMapping.BINARY_BATTERY_LOW)));
+    }
+
+    @Test
+    void testWritesAreDeferredUntilFlush() {
+        BTHomeChannelTypeProvider provider = new BTHomeChannelTypeProvider(storageService, scheduler);
+        ChannelType channelType = channelType(THING_1, "temperature");
+        provider.putChannelType(channelType);
+
+        assertNotNull(provider.getChannelType(channelType.getUID(), null));
+        assertTrue(channelTypeStorage().map.isEmpty());
+
+        provider.flush();
+        assertEquals(Set.of(channelType.getUID().toString()), channelTypeStorage().map.keySet());
+    }
+
+    @Test
+    void testRemoveChannelTypesForThing() {
+        BTHomeChannelTypeProvider provider = new BTHomeChannelTypeProvider(storageService, scheduler);
+        ChannelType temperature = channelType(THING_1, "temperature");
+        ChannelType humidity = channelType(THING_1, "humidity");
+        ChannelType other = channelType(THING_2, "temperature");
+        provider.putChannelType(temperature);
+        provider.putChannelType(humidity);
+        provider.putChannelType(other);
+        provider.flush();
+
+        provider.removeChannelTypesForThing(THING_1);
+        assertNull(provider.getChannelType(temperature.getUID(), null));
+        assertNull(provider.getChannelType(humidity.getUID(), null));
+        assertNotNull(provider.getChannelType(other.getUID(), null));
+
+        provider.flush();
+        assertEquals(Set.of(other.getUID().toString()), channelTypeStorage().map.keySet());
+    }
+
+    @Test
+    void testLoadsStoredChannelTypesOnce() {
+        BTHomeChannelTypeProvider provider = new BTHomeChannelTypeProvider(storageService, scheduler);
+        ChannelType channelType = channelType(THING_1, "temperature");
+        provider.putChannelType(channelType);
+        provider.deactivate();
+
+        BTHomeChannelTypeProvider restarted = new BTHomeChannelTypeProvider(storageService, scheduler);
+        Collection<ChannelType> channelTypes = restarted.getChannelTypes(null);
+        assertTrue(channelTypes.stream().anyMatch(c -> c.getUID().equals(channelType.getUID())));
+        // Shared channel types are always available
+        assertNotNull(restarted.getChannelType(
+                BTHomeChannelTypeProvider.sharedChannelTypeUID(BTHomeTypeMapping.TEMPERATURE), null));
+
+        restarted.removeChannelTypesForThing(THING_1);
+        restarted.flush();
+        assertTrue(channelTypeStorage().map.isEmpty());
+    }
+
+    private static ChannelType channelType(ThingUID thingUID, String channelName) {
+        ChannelTypeUID channelTypeUID = BTHomeChannelTypeProvider.thingChannelTypeUID(thingUID, channelName);
+        return BTHomeChannelTypeProvider.buildChannelType(channelTypeUID, channelName,
+                BTHomeTypeMapping.fromChannelName(channelName.replaceFirst("_\\d+$", "")));
+    }
+
+    private MapStorage<?> channelTypeStorage() {
+        return storages.entrySet().stream().filter(e -> e.getKey().endsWith("-ChannelType")).findFirst().get()
+                .getValue();
+    }
+
+    private static class MapStorage<T> implements Storage<T> {
+        private final Map<String, T> map = new HashMap<>();
+
+        @Override
+        public @Nullable T put(String key, @Nullable T value) {
+            return map.put(key, value);
+        }
+
+        @Override
+        public @Nullable T remove(String key) {
+            return map.remove(key);
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public @Nullable T get(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public Collection<String> getKeys() {
+            return map.keySet();
+        }
+
+        @Override
+        public Collection<@Nullable T> getValues() {
+            return map.values();
+        }
+    }
+}
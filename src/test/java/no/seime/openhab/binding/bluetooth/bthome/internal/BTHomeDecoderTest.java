@@ -0,0 +1,243 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import io.kaitai.struct.ByteBufferKaitaiStream;
+import io.kaitai.struct.KaitaiStruct;
+import no.seime.openhab.binding.bluetooth.bthome.internal.datastructure.BthomeServiceData;
+
+/**
+ * Differential test of the hand written {@link BTHomeDecoder} against the generated Kaitai parser.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeDecoderTest {
+
+    private static final List<String> CORPUS = List.of(
+            // b-parasite
+            "64, 2, -54, 9, 46, 40, 5, 0, 0, 0, 12, -10, 12, 47, 0, 1, 100,1,100",
+            "64, 2, -54, 9, 46, 40, 5, 0, 0, 0, 12, -10, 12, 47, 0, 1, 100,33,1,45,0,63,2,12,-16,2,0",
+            // Shelly style packets with packet id
+            "64, 0, 70, 1, 100, 2, 76, 8, 3, -127, 20", "64, 0, 64, 12, -47, 11, 16, 0, 17, 1",
+            // Negative temperature, dewpoint and rotation
+            "64, 2, 12, -2, 8, -1, -1, 63, 0, -128, 69, -10, -1",
+            // Text, raw, button, dimmer, device type and firmware versions
+            "64, 83, 5, 104, 101, 108, 108, 111, 84, 3, 1, 2, 3, 58, 4, 60, 2, 3, -16, 1, 0, -15, 4, 3, 2, 1, -14, 3, 2, 1",
+            // MAC included
+            "66, 1, 2, 3, 4, 5, 6, 1, 55",
+            // Encrypted
+            "65, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12",
+            // Unknown object id terminates parsing
+            "64, 1, 55, 48, 1, 2, 3",
+            // BTHome V1 header
+            "32, 1, 55");
+
+    @Test
+    void testCorpusAgreesWithKaitai() throws Exception {
+        for (String payload : CORPUS) {
+            assertAgrees(TestUtils.byteStringToByteArray(payload));
+        }
+    }
+
+    @Test
+    void testRandomPayloadsAgreeWithKaitai() throws Exception {
+        List<Integer> knownObjectIds = new ArrayList<>();
+        for (BthomeServiceData.BthomeObjectId objectId : BthomeServiceData.BthomeObjectId.values()) {
+            knownObjectIds.add((int) objectId.id());
+        }
+
+        Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            assertAgrees(randomPayload(random, knownObjectIds));
+        }
+    }
+
+    @Test
+    void testTruncatedMeasurementIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> BTHomeDecoder.decode(TestUtils.byteStringToByteArray("64, 2, 1"), new BTHomePacket()));
+        assertThrows(IllegalArgumentException.class,
+                () -> BTHomeDecoder.decode(TestUtils.byteStringToByteArray("64, 83, 5, 104"), new BTHomePacket()));
+        assertThrows(IllegalArgumentException.class,
+                () -> BTHomeDecoder.decode(TestUtils.byteStringToByteArray("66, 1, 2"), new BTHomePacket()));
+    }
+
+    @Test
+    void testHeaderFlags() {
+        assertEquals(2, BTHomeDecoder.version(0x40));
+        assertTrue(BTHomeDecoder.isEncrypted(0x41));
+        assertTrue(BTHomeDecoder.isTriggerBased(0x44));
+        assertEquals(7, BTHomeDecoder.measurementOffset(0x42));
+    }
+
+    @Test
+    void testObjectIdsArePeekedWithoutDecoding() {
+        boolean[] buttonEvents = new boolean[256];
+        buttonEvents[BTHomeDecoder.OBJECT_ID_EVENT_BUTTON] = true;
+        // Button event after text and temperature
+        assertTrue(BTHomeDecoder.containsObjectId(
+                TestUtils.byteStringToByteArray("64, 83, 2, 104, 105, 2, 12, -2, 58, 4"), buttonEvents));
+        // Same with MAC included
+        assertTrue(BTHomeDecoder.containsObjectId(TestUtils.byteStringToByteArray("66, 1, 2, 3, 4, 5, 6, 58, 4"),
+                buttonEvents));
+        // The text content is not taken as an object id
+        assertFalse(BTHomeDecoder.containsObjectId(TestUtils.byteStringToByteArray("64, 83, 1, 58"), buttonEvents));
+        // Stops at an unknown object id
+        assertFalse(BTHomeDecoder.containsObjectId(TestUtils.byteStringToByteArray("64, 48, 1, 58, 4"), buttonEvents));
+        // Encrypted payloads can't be inspected
+        assertFalse(BTHomeDecoder.containsObjectId(TestUtils.byteStringToByteArray("65, 58, 4"), buttonEvents));
+        assertFalse(BTHomeDecoder.containsObjectId(new byte[0], buttonEvents));
+    }
+
+    private static byte[] randomPayload(Random random, List<Integer> knownObjectIds) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (random.nextBoolean()) {
+            out.write(0x40);
+        } else {
+            byte[] mac = new byte[BTHomeDecoder.MAC_LENGTH];
+            random.nextBytes(mac);
+            out.write(0x40 | BTHomeDecoder.FLAG_MAC_INCLUDED);
+            out.write(mac, 0, mac.length);
+        }
+        int numMeasurements = random.nextInt(12);
+        for (int m = 0; m < numMeasurements; m++) {
+            int objectId = knownObjectIds.get(random.nextInt(knownObjectIds.size()));
+            out.write(objectId);
+            if (objectId == BTHomeDecoder.OBJECT_ID_TEXT || objectId == BTHomeDecoder.OBJECT_ID_RAW) {
+                int length = random.nextInt(8);
+                out.write(length);
+                for (int b = 0; b < length; b++) {
+                    out.write('a' + random.nextInt(26));
+                }
+            } else if (objectId == BTHomeDecoder.OBJECT_ID_EVENT_BUTTON) {
+                out.write(random.nextInt(7));
+            } else if (objectId == BTHomeDecoder.OBJECT_ID_EVENT_DIMMER) {
+                out.write(random.nextInt(3));
+                out.write(random.nextInt(256));
+            } else {
+                int length = BTHomeDecoder.fixedLength(objectId);
+                for (int b = 0; b < length; b++) {
+                    out.write(random.nextInt(256));
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertAgrees(byte[] payload) throws Exception {
+        String context = Arrays.toString(payload);
+
+        BthomeServiceData reference = new BthomeServiceData(new ByteBufferKaitaiStream(payload));
+        BTHomePacket packet = new BTHomePacket();
+        int deviceInformation = BTHomeDecoder.decode(payload, packet);
+
+        assertEquals(reference.deviceInformation().encryption(), BTHomeDecoder.isEncrypted(deviceInformation),
+                context);
+        assertEquals(reference.deviceInformation().macIncluded(),
+                (deviceInformation & BTHomeDecoder.FLAG_MAC_INCLUDED) != 0, context);
+        assertEquals(reference.deviceInformation().triggerBased(), BTHomeDecoder.isTriggerBased(deviceInformation),
+                context);
+        assertEquals(reference.deviceInformation().bthomeVersion(), BTHomeDecoder.version(deviceInformation),
+                context);
+
+        if (reference.measurement() == null) {
+            assertEquals(0, packet.size(), context);
+            return;
+        }
+
+        // Kaitai represents an unknown object id as a measurement with a null object id consuming the rest
+        List<BthomeServiceData.BthomeMeasurement> known = new ArrayList<>();
+        for (BthomeServiceData.BthomeMeasurement measurement : reference.measurement()) {
+            if (measurement.objectId() == null) {
+                break;
+            }
+            known.add(measurement);
+        }
+
+        assertEquals(known.size(), packet.size(), context);
+        for (int i = 0; i < known.size(); i++) {
+            BthomeServiceData.BthomeMeasurement expected = known.get(i);
+            assertEquals(expected.objectId().id(), packet.objectId(i), context);
+            assertMeasurementAgrees(expected.data(), packet, i, context);
+        }
+    }
+
+    private static void assertMeasurementAgrees(KaitaiStruct data, BTHomePacket packet, int index, String context)
+            throws Exception {
+        if (data instanceof BthomeServiceData.BthomeSensorText text) {
+            assertEquals(text.value(), packet.stringValue(index), context);
+            return;
+        }
+        if (data instanceof BthomeServiceData.BthomeSensorRaw raw) {
+            assertArrayEquals(raw.value(), packet.bytesValue(index), context);
+            return;
+        }
+        if (data instanceof BthomeServiceData.BthomeEventDimmer dimmer) {
+            assertEquals(dimmer.event().id() | ((long) dimmer.steps() << 8), packet.rawValue(index), context);
+            return;
+        }
+        if (data instanceof BthomeServiceData.BthomeDeviceFwVersionUint24 fw) {
+            assertEquals(fw.fwVersionPatch() | fw.fwVersionMinor() << 8 | fw.fwVersionMajor() << 16,
+                    packet.rawValue(index), context);
+            return;
+        }
+        if (data instanceof BthomeServiceData.BthomeDeviceFwVersionUint32 fw) {
+            assertEquals(
+                    fw.fwVersionBuild() | fw.fwVersionPatch() << 8 | fw.fwVersionMinor() << 16
+                            | (long) fw.fwVersionMajor() << 24,
+                    packet.rawValue(index), context);
+            return;
+        }
+
+        // Scaled measurements expose the scaled value as a Double instance
+        Method scaled = null;
+        Method plain = null;
+        for (Method method : data.getClass().getDeclaredMethods()) {
+            if (!Modifier.isPublic(method.getModifiers()) || method.getParameterCount() != 0
+                    || method.getName().startsWith("_") || "unit".equals(method.getName())) {
+                continue;
+            }
+            if (method.getReturnType() == Double.class) {
+                scaled = method;
+            } else if (method.getReturnType() == int.class || method.getReturnType() == long.class
+                    || method.getReturnType() == short.class || method.getReturnType() == BthomeServiceData.Bool8.class
+                    || method.getReturnType().isEnum()) {
+                plain = method;
+            }
+        }
+
+        if (scaled != null) {
+            double expected = ((Number) scaled.invoke(data)).doubleValue();
+            assertEquals(expected, packet.rawValue(index) * packet.scale(index), 0, context);
+            return;
+        }
+
+        assertNotNull(plain, "No value accessor found for " + data.getClass().getSimpleName());
+        Object value = plain.invoke(data);
+        long expected;
+        if (value instanceof BthomeServiceData.Bool8 bool) {
+            expected = bool.intValue();
+        } else if (value instanceof BthomeServiceData.ButtonEventType event) {
+            expected = event.id();
+        } else {
+            expected = ((Number) value).longValue();
+        }
+        assertEquals(expected, packet.rawValue(index), context);
+        assertEquals(1, packet.scale(index), context);
+    }
+}
@@ -0,0 +1,81 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeDecryptorTest {
+
+    // Key, address and measurements (temperature, humidity) of the example at https://bthome.io/encryption/
+    private static final byte[] KEY = BTHomeDecryptor.parseKey("231d39c1d7cc1ab1aee224cd096db932");
+    private static final byte[] MAC = BTHomeDecryptor.parseMac("54:48:E6:8F:80:A5");
+    private static final byte[] MEASUREMENTS = HexFormat.of().parseHex("02ca0903bf13");
+
+    private BTHomeDecryptor decryptor;
+
+    @BeforeEach
+    public void setUp() throws GeneralSecurityException {
+        decryptor = new BTHomeDecryptor(KEY, MAC);
+    }
+
+    @Test
+    void testDecrypt() throws GeneralSecurityException {
+        byte[] payload = HexFormat.of().parseHex("41a47266c95f730011223378237214");
+        assertDecrypted(payload);
+    }
+
+    @Test
+    void testDecryptWithIncludedMac() throws GeneralSecurityException {
+        byte[] payload = TestUtils.byteStringToByteArray(
+                "67, -91, -128, -113, -26, 72, 84, -15, -106, -64, 111, -5, 73, 0, 17, 34, 51, -16, -114, -53, -34");
+        // The MAC in the payload takes precedence
+        decryptor = new BTHomeDecryptor(KEY, new byte[6]);
+        assertDecrypted(payload);
+    }
+
+    @Test
+    void testCounterMustIncrease() throws GeneralSecurityException {
+        byte[] first = TestUtils.encrypt(KEY, MAC, MEASUREMENTS, 10);
+        byte[] older = TestUtils.encrypt(KEY, MAC, MEASUREMENTS, 9);
+        byte[] newer = TestUtils.encrypt(KEY, MAC, MEASUREMENTS, 11);
+
+        assertDecrypted(first);
+        assertEquals(BTHomeDecryptor.REPLAYED, decryptor.decrypt(first));
+        assertEquals(BTHomeDecryptor.REPLAYED, decryptor.decrypt(older));
+        assertDecrypted(newer);
+    }
+
+    @Test
+    void testWrongKeyIsRejected() throws GeneralSecurityException {
+        byte[] payload = TestUtils.encrypt(BTHomeDecryptor.parseKey("00000000000000000000000000000000"), MAC,
+                MEASUREMENTS, 1);
+        assertThrows(GeneralSecurityException.class, () -> decryptor.decrypt(payload));
+
+        // A rejected packet must not advance the counter
+        assertDecrypted(TestUtils.encrypt(KEY, MAC, MEASUREMENTS, 1));
+    }
+
+    @Test
+    void testLongPayloadSpanningBlocks() throws GeneralSecurityException {
+        byte[] measurements = TestUtils.byteStringToByteArray(
+                "2, -54, 9, 3, -65, 19, 1, 100, 5, 0, 0, 0, 12, -10, 12, 47, 0, 63, 2, 12, 69, -10, -1");
+        int length = decryptor.decrypt(TestUtils.encrypt(KEY, MAC, measurements, 1));
+        assertArrayEquals(measurements, Arrays.copyOf(decryptor.getPlaintext(), length));
+    }
+
+    private void assertDecrypted(byte[] payload) throws GeneralSecurityException {
+        int length = decryptor.decrypt(payload);
+        assertArrayEquals(MEASUREMENTS, Arrays.copyOf(decryptor.getPlaintext(), length));
+    }
+}
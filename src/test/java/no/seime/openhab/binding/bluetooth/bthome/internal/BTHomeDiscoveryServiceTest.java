@@ -0,0 +1,164 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.openhab.binding.bluetooth.BluetoothAdapter;
+import org.openhab.binding.bluetooth.BluetoothAddress;
+import org.openhab.binding.bluetooth.BluetoothDevice;
+import org.openhab.binding.bluetooth.BluetoothDeviceListener;
+import org.openhab.binding.bluetooth.notification.BluetoothScanNotification;
+import org.openhab.core.config.discovery.DiscoveryListener;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeDiscoveryServiceTest {
+
+    private static final ThingUID ADAPTER = new ThingUID("bluetooth:bluez:hci0");
+    private static final String ADDRESS = "A4:C1:38:00:00:01";
+    // Battery, temperature and firmware version
+    private static final byte[] PAYLOAD = TestUtils.byteStringToByteArray("64, 1, 100, 2, -54, 9, -15, 4, 3, 2, 1");
+
+    private final BTHomeDiscoveryService discoveryService = new BTHomeDiscoveryService();
+    private final DiscoveryListener listener = Mockito.mock(DiscoveryListener.class);
+    private final BluetoothAdapter adapter = Mockito.mock(BluetoothAdapter.class);
+
+    @BeforeEach
+    void setUp() {
+        when(adapter.getUID()).thenReturn(ADAPTER);
+        discoveryService.addDiscoveryListener(listener);
+    }
+
+    @AfterEach
+    void tearDown() {
+        discoveryService.removeDiscoveryListener(listener);
+    }
+
+    @Test
+    void testResultHasDevicePropertiesAndExpectedChannels() {
+        discoveryService.onAdvertisement(ADDRESS, ADAPTER, "Sensor", PAYLOAD, 0);
+        discoveryService.flush(0);
+
+        ArgumentCaptor<DiscoveryResult> result = ArgumentCaptor.forClass(DiscoveryResult.class);
+        verify(listener).thingDiscovered(eq(discoveryService), result.capture());
+        assertEquals(new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, ADAPTER, "a4c138000001"),
+                result.getValue().getThingUID());
+        assertEquals(ADAPTER, result.getValue().getBridgeUID());
+        assertEquals("Sensor (BTHome)", result.getValue().getLabel());
+        assertEquals(ADDRESS, result.getValue().getProperties().get("address"));
+        assertEquals("battery,temperature",
+                result.getValue().getProperties().get(BTHomeBindingConstants.PROPERTY_CHANNELS));
+        assertEquals("1.2.3.4",
+                result.getValue().getProperties().get(BTHomeBindingConstants.PROPERTY_FIRMWARE_VERSION));
+    }
+
+    @Test
+    void testInboxUpdatesAreThrottled() {
+        long now = 0;
+        for (int i = 0; i < 1000; i++) {
+            discoveryService.onAdvertisement(ADDRESS, ADAPTER, null, PAYLOAD, now++);
+        }
+        discoveryService.flush(now);
+        discoveryService.flush(now + 1);
+        verify(listener, times(1)).thingDiscovered(any(), any());
+
+        // Changed, but republished only after the interval
+        now += BTHomeDiscoveryService.DECODE_INTERVAL_MILLIS;
+        discoveryService.onAdvertisement(ADDRESS, ADAPTER, null,
+                TestUtils.byteStringToByteArray("64, 1, 100, 2, -54, 9, 46, 40"), now);
+        discoveryService.flush(now);
+        verify(listener, times(1)).thingDiscovered(any(), any());
+        discoveryService.flush(now + BTHomeDiscoveryService.REPUBLISH_INTERVAL_MILLIS);
+        verify(listener, times(2)).thingDiscovered(any(), any());
+    }
+
+    @Test
+    void testResultsPerFlushAreBounded() {
+        for (int i = 0; i < BTHomeDiscoveryService.MAX_RESULTS_PER_FLUSH + 5; i++) {
+            discoveryService.onAdvertisement(String.format("A4:C1:38:00:01:%02X", i), ADAPTER, null, PAYLOAD, 0);
+        }
+        discoveryService.flush(0);
+        verify(listener, times(BTHomeDiscoveryService.MAX_RESULTS_PER_FLUSH)).thingDiscovered(any(), any());
+        discoveryService.flush(1);
+        verify(listener, times(BTHomeDiscoveryService.MAX_RESULTS_PER_FLUSH + 5)).thingDiscovered(any(), any());
+    }
+
+    @Test
+    void testExpiredDevicesAreRemovedFromInbox() {
+        discoveryService.onAdvertisement(ADDRESS, ADAPTER, null, PAYLOAD, 0);
+        discoveryService.flush(0);
+        discoveryService.flush(BTHomeDiscoveryService.EXPIRY_MILLIS);
+        verify(listener, never()).thingRemoved(any(), any());
+
+        discoveryService.flush(BTHomeDiscoveryService.EXPIRY_MILLIS + 1);
+        verify(listener).thingRemoved(discoveryService,
+                new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, ADAPTER, "a4c138000001"));
+    }
+
+    @Test
+    void testCacheIsBounded() {
+        for (int i = 0; i <= BTHomeDiscoveryService.MAX_DEVICES; i++) {
+            discoveryService.onAdvertisement(String.format("A4:C1:38:00:%02X:%02X", i >> 8, i & 0xFF), ADAPTER,
+                    null, PAYLOAD, 0);
+        }
+        discoveryService.startScan();
+        verify(listener, times(BTHomeDiscoveryService.MAX_DEVICES)).thingDiscovered(any(), any());
+    }
+
+    @Test
+    void testAdvertisementsWithServiceDataArePassedOnUntilDeviceIsRemoved() {
+        BluetoothDevice device = mockDevice(ADDRESS);
+        discoveryService.deviceDiscovered(device);
+        BluetoothDeviceListener deviceListener = captureListener(device);
+
+        BluetoothScanNotification notification = new BluetoothScanNotification();
+        notification.getServiceData().put(BTHomeBindingConstants.SERVICEDATA_UUID, PAYLOAD);
+        deviceListener.onScanRecordReceived(notification);
+        discoveryService.startScan();
+        verify(listener).thingDiscovered(any(), any());
+
+        discoveryService.deviceRemoved(device);
+        verify(device).removeListener(deviceListener);
+    }
+
+    @Test
+    void testOtherDevicesDoNotEnterCache() {
+        discoveryService.onAdvertisement(ADDRESS, ADAPTER, null, PAYLOAD, 0);
+        for (int i = 0; i <= BTHomeDiscoveryService.MAX_DEVICES; i++) {
+            BluetoothDevice device = mockDevice(String.format("11:22:33:44:%02X:%02X", i >> 8, i & 0xFF));
+            discoveryService.deviceDiscovered(device);
+            // No BTHome service data
+            captureListener(device).onScanRecordReceived(new BluetoothScanNotification());
+        }
+        discoveryService.startScan();
+        verify(listener, times(1)).thingDiscovered(any(), any());
+        verify(listener, never()).thingRemoved(any(), any());
+    }
+
+    private BluetoothDevice mockDevice(String address) {
+        BluetoothDevice device = Mockito.mock(BluetoothDevice.class);
+        when(device.getAddress()).thenReturn(new BluetoothAddress(address));
+        when(device.getAdapter()).thenReturn(adapter);
+        return device;
+    }
+
+    private static BluetoothDeviceListener captureListener(BluetoothDevice device) {
+        ArgumentCaptor<BluetoothDeviceListener> deviceListener = ArgumentCaptor.forClass(BluetoothDeviceListener.class);
+        verify(device).addListener(deviceListener.capture());
+        return deviceListener.getValue();
+    }
+}
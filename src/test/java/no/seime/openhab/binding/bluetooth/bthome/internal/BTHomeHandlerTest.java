@@ -1,8 +1,11 @@
 package no.seime.openhab.binding.bluetooth.bthome.internal;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 
@@ -10,6 +13,8 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -21,9 +26,13 @@ import org.openhab.core.library.types.QuantityType;
 import org.openhab.core.library.unit.SIUnits;
 import org.openhab.core.library.unit.Units;
 import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
 import org.openhab.core.thing.internal.ThingImpl;
+import org.openhab.core.types.RefreshType;
 import org.openhab.core.types.State;
 
 import com.google.protobuf.ByteString;
@@ -132,6 +141,165 @@ class BTHomeHandlerTest {
         verifyChannelCreated("power-on");
     }
 
+    @Test
+    void testUnchangedPropertiesDoNotUpdateThing() {
+        deviceHandler.initialize();
+        deviceHandler.processDataPacket(TestUtils.byteStringToByteArray(
+                "64, 2, -54, 9, 46, 40, 5, 0, 0, 0, 12, -10, 12, 47, 0, 1, 100,33,1,45,0,63,2,12,-16,2,0"));
+        deviceHandler.processDataPacket(TestUtils.byteStringToByteArray(
+                "64, 2, -54, 9, 46, 40, 5, 0, 0, 0, 12, -10, 12, 47, 0, 1, 99,33,1,45,0,63,2,12,-16,2,0"));
+
+        // Channels and properties are added with a single update, the second packet changes nothing
+        Mockito.verify(thingHandlerCallback, Mockito.times(1)).thingUpdated(Mockito.any());
+        assertEquals("2", deviceHandler.getThing().getProperties().get("deviceType"));
+    }
+
+    @Test
+    void testThingChannelTypesAreMigratedToSharedChannelTypes(@TempDir Path tempDir) {
+        ChannelUID channelUID = new ChannelUID(thing.getUID(), "battery_1");
+        ((ThingImpl) thing).setChannels(List.of(ChannelBuilder.create(channelUID)
+                .withType(BTHomeChannelTypeProvider.thingChannelTypeUID(thing.getUID(), "battery_1")).build()));
+        BTHomeBindingConfiguration bindingConfiguration = new BTHomeBindingConfiguration();
+        bindingConfiguration.sharedChannelTypes = true;
+        deviceHandler.dispose();
+        deviceHandler = Mockito.spy(new TestableBTHomeHandler(thing, channelTypeProvider,
+                new BTHomePayloadStore(tempDir.resolve("payloads.bin"), null), bindingConfiguration));
+        deviceHandler.setCallback(thingHandlerCallback);
+
+        deviceHandler.initialize();
+
+        assertEquals(BTHomeChannelTypeProvider.sharedChannelTypeUID(BTHomeTypeMapping.BATTERY_PERCENTAGE),
+                deviceHandler.getThing().getChannel(channelUID).getChannelTypeUID());
+        Mockito.verify(channelTypeProvider).removeChannelTypesForThing(thing.getUID());
+    }
+
+    @Test
+    void testLastPayloadIsRestoredOnInitialize(@TempDir Path tempDir) {
+        BTHomePayloadStore payloadStore = new BTHomePayloadStore(tempDir.resolve("payloads.bin"), null);
+        payloadStore.put(thing.getUID().getAsString(), TestUtils.byteStringToByteArray("64, 1, 100"),
+                System.currentTimeMillis() - 60000);
+        deviceHandler.dispose();
+        deviceHandler = Mockito.spy(new TestableBTHomeHandler(thing, channelTypeProvider, payloadStore));
+        deviceHandler.setCallback(thingHandlerCallback);
+
+        deviceHandler.initialize();
+
+        verifyStateUpdated("battery", new QuantityType<>(100, Units.PERCENT));
+        // Not heard from the device yet
+        Mockito.verify(thingHandlerCallback, Mockito.never()).statusUpdated(Mockito.any(),
+                Mockito.argThat(status -> status.getStatus() == ThingStatus.ONLINE));
+    }
+
+    @Test
+    void testOnlyAcceptedPayloadsAreStored(@TempDir Path tempDir) {
+        BTHomePayloadStore payloadStore = new BTHomePayloadStore(tempDir.resolve("payloads.bin"), null);
+        deviceHandler.dispose();
+        deviceHandler = Mockito.spy(new TestableBTHomeHandler(thing, channelTypeProvider, payloadStore));
+        deviceHandler.setCallback(thingHandlerCallback);
+        deviceHandler.initialize();
+
+        deviceHandler.onScanRecordReceived(scanNotification("64, 0, 42, 1, 99"));
+        // Late copy
+        deviceHandler.onScanRecordReceived(scanNotification("64, 0, 41, 1, 100"));
+        // Truncated
+        deviceHandler.onScanRecordReceived(scanNotification("64, 2, 1"));
+
+        BTHomePayloadStore.Payload stored = payloadStore.get(thing.getUID().getAsString(), 60000,
+                System.currentTimeMillis());
+        assertArrayEquals(TestUtils.byteStringToByteArray("64, 0, 42, 1, 99"), stored.getData());
+    }
+
+    @Test
+    void testChannelsExpectedByDiscoveryAreCreatedOnInitialize() {
+        thing.setProperty(BTHomeBindingConstants.PROPERTY_CHANNELS, "battery,temperature_1,temperature_2");
+
+        deviceHandler.initialize();
+
+        assertEquals(3, deviceHandler.getThing().getChannels().size());
+        verifyChannelCreated("battery");
+        verifyChannelCreated("temperature_1");
+        verifyChannelCreated("temperature_2");
+    }
+
+    @Test
+    void testPriorityChannelsCoverEveryResolution() {
+        boolean[] priority = BTHomeHandler.priorityObjectIds("temperature");
+
+        assertTrue(priority[BTHomeTypeMapping.TEMPERATURE.getObjectId()]);
+        assertTrue(priority[BTHomeTypeMapping.TEMPERATURE_DECIMAL.getObjectId()]);
+        assertTrue(priority[BTHomeTypeMapping.EVENT_BUTTON.getObjectId()]);
+        assertFalse(priority[BTHomeTypeMapping.HUMIDITY.getObjectId()]);
+    }
+
+    @Test
+    void testLatePacketsDoNotOverwriteNewerStates() {
+        deviceHandler.initialize();
+        deviceHandler.processDataPacket(TestUtils.byteStringToByteArray("64, 0, 42, 1, 99"));
+        // Delayed by another proxy
+        deviceHandler.processDataPacket(TestUtils.byteStringToByteArray("64, 0, 41, 1, 100"));
+
+        verifyStateUpdated("battery", new QuantityType<>(99, Units.PERCENT));
+        Mockito.verify(thingHandlerCallback, Mockito.never()).stateUpdated(Mockito.any(),
+                Mockito.eq(new QuantityType<>(100, Units.PERCENT)));
+    }
+
+    @Test
+    void testSafetyAlarmsAreUpdatedBeforeRoutineMeasurements() {
+        deviceHandler.initialize();
+        // Battery, then smoke
+        deviceHandler.processDataPacket(TestUtils.byteStringToByteArray("64, 1, 100, 41, 1"));
+
+        InOrder inOrder = Mockito.inOrder(thingHandlerCallback);
+        inOrder.verify(thingHandlerCallback).stateUpdated(new ChannelUID(thing.getUID(), "smoke"), OnOffType.ON);
+        inOrder.verify(thingHandlerCallback).stateUpdated(new ChannelUID(thing.getUID(), "battery"),
+                new QuantityType<>(100, Units.PERCENT));
+    }
+
+    @Test
+    void testRefreshRepublishesLastStateOfChannel() {
+        deviceHandler.initialize();
+        deviceHandler.processDataPacket(TestUtils.byteStringToByteArray("64, 1, 100, 2, -54, 9"));
+        ChannelUID battery = new ChannelUID(thing.getUID(), "battery");
+        ChannelUID temperature = new ChannelUID(thing.getUID(), "temperature");
+
+        deviceHandler.handleCommand(battery, RefreshType.REFRESH);
+        deviceHandler.handleCommand(battery, RefreshType.REFRESH);
+
+        Mockito.verify(thingHandlerCallback, Mockito.times(3)).stateUpdated(battery,
+                new QuantityType<>(100, Units.PERCENT));
+        Mockito.verify(thingHandlerCallback, Mockito.times(1)).stateUpdated(Mockito.eq(temperature), Mockito.any());
+    }
+
+    @Test
+    void testDuplicateAdvertisementsAreDroppedBeforeParsing() throws TextFormat.InvalidEscapeSequenceException {
+        deviceHandler.initialize();
+        String advertisement = "\\002\\001\\006\\016\\026\\322\\374@\\000F\\001d\\002L\\b\\003\\201\\024";
+        deviceHandler.onScanRecordReceived(extractBTHomeDataFromProtobufLogMessage(advertisement));
+        deviceHandler.onScanRecordReceived(extractBTHomeDataFromProtobufLogMessage(advertisement));
+        deviceHandler.onScanRecordReceived(extractBTHomeDataFromProtobufLogMessage(advertisement));
+
+        assertEquals(2, deviceHandler.getSuppressedDuplicateCount());
+        verifyStateUpdated("battery", new QuantityType<>(100, Units.PERCENT));
+    }
+
+    @Test
+    void testPacketsAreProcessedAfterThingUpdate() throws TextFormat.InvalidEscapeSequenceException {
+        deviceHandler.initialize();
+        // Disposes and initializes the handler again, as a configuration change does
+        deviceHandler.thingUpdated(deviceHandler.getThing());
+
+        String advertisement = "\\002\\001\\006\\016\\026\\322\\374@\\000F\\001d\\002L\\b\\003\\201\\024";
+        deviceHandler.onScanRecordReceived(extractBTHomeDataFromProtobufLogMessage(advertisement));
+        verifyStateUpdated("battery", new QuantityType<>(100, Units.PERCENT));
+    }
+
+    private static BluetoothScanNotification scanNotification(String bthomeData) {
+        BluetoothScanNotification notification = new BluetoothScanNotification();
+        notification.getServiceData().put(BTHomeBindingConstants.SERVICEDATA_UUID,
+                TestUtils.byteStringToByteArray(bthomeData));
+        return notification;
+    }
+
     private static BluetoothScanNotification extractBTHomeDataFromProtobufLogMessage(String content)
             throws TextFormat.InvalidEscapeSequenceException {
         ByteString bs = TextFormat.unescapeBytes(content);
@@ -0,0 +1,137 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeIngestionPipelineTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final BTHomeIngestionPipeline pipeline = new BTHomeIngestionPipeline(tasks::add);
+
+    @Test
+    void testBacklogIsCoalescedToNewestPayload() {
+        List<Byte> processed = new ArrayList<>();
+        BTHomeIngestionPipeline.Lane lane = pipeline.createLane("00:00:00:00:00:01", (p, nanos) -> processed.add(p[0]));
+
+        lane.submit(new byte[] { 1 }, 0);
+        lane.submit(new byte[] { 2 }, 0);
+        lane.submit(new byte[] { 3 }, 0);
+
+        assertEquals(1, tasks.size());
+        assertEquals(1, pipeline.getQueueDepth());
+        assertEquals(2, pipeline.getCoalescedCount());
+
+        runTasks();
+        assertEquals(List.of((byte) 3), processed);
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    void testPayloadsSubmittedWhileProcessingAreProcessedInOrder() {
+        List<Byte> processed = new ArrayList<>();
+        BTHomeIngestionPipeline.Lane[] lane = new BTHomeIngestionPipeline.Lane[1];
+        lane[0] = pipeline.createLane("00:00:00:00:00:01", (p, receivedNanos) -> {
+            processed.add(p[0]);
+            if (p[0] == 1) {
+                // Arrives while the first payload is being processed
+                lane[0].submit(new byte[] { 2 }, 0);
+            }
+        });
+
+        lane[0].submit(new byte[] { 1 }, 0);
+        runTasks();
+
+        assertEquals(List.of((byte) 1, (byte) 2), processed);
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    void testDevicesAreQueuedIndependently() {
+        List<String> processed = new ArrayList<>();
+        BTHomeIngestionPipeline.Lane first = pipeline.createLane("00:00:00:00:00:01",
+                (p, nanos) -> processed.add("first"));
+        BTHomeIngestionPipeline.Lane second = pipeline.createLane("00:00:00:00:00:02",
+                (p, nanos) -> processed.add("second"));
+
+        first.submit(new byte[] { 1 }, 0);
+        second.submit(new byte[] { 1 }, 0);
+        assertEquals(2, pipeline.getQueueDepth());
+
+        second.close();
+        runTasks();
+        assertEquals(List.of("first"), processed);
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    void testPriorityPayloadsAreNotCoalescedAndProcessedFirst() {
+        List<Byte> processed = new ArrayList<>();
+        List<Long> receptions = new ArrayList<>();
+        Queue<Runnable> priorityTasks = new ArrayDeque<>();
+        BTHomeIngestionPipeline priorityPipeline = new BTHomeIngestionPipeline(tasks::add, priorityTasks::add);
+        BTHomeIngestionPipeline.Lane lane = priorityPipeline.createLane("00:00:00:00:00:01", (p, receivedNanos) -> {
+            processed.add(p[0]);
+            receptions.add(receivedNanos);
+        });
+
+        lane.submit(new byte[] { 1 }, 1);
+        lane.submitPriority(new byte[] { 2 }, 2);
+        lane.submitPriority(new byte[] { 3 }, 3);
+        assertEquals(3, priorityPipeline.getQueueDepth());
+        assertEquals(0, priorityPipeline.getCoalescedCount());
+
+        // The priority worker takes the routine payload along
+        Runnable task;
+        while ((task = priorityTasks.poll()) != null) {
+            task.run();
+        }
+        assertEquals(List.of((byte) 2, (byte) 3, (byte) 1), processed);
+        assertEquals(List.of(2L, 3L, 1L), receptions);
+        assertEquals(0, priorityPipeline.getQueueDepth());
+
+        runTasks();
+        assertEquals(3, processed.size());
+    }
+
+    @Test
+    void testPriorityBacklogIsBounded() {
+        List<Byte> processed = new ArrayList<>();
+        BTHomeIngestionPipeline.Lane lane = pipeline.createLane("00:00:00:00:00:01", (p, r) -> processed.add(p[0]));
+
+        int submitted = BTHomeIngestionPipeline.MAX_PRIORITY_PENDING + 3;
+        for (int i = 0; i < submitted; i++) {
+            lane.submitPriority(new byte[] { (byte) i }, i);
+        }
+        assertEquals(BTHomeIngestionPipeline.MAX_PRIORITY_PENDING + 1, pipeline.getQueueDepth());
+        assertEquals(2, pipeline.getCoalescedCount());
+
+        runTasks();
+        // The queued priority payloads, then the newest of the overflow
+        assertEquals(BTHomeIngestionPipeline.MAX_PRIORITY_PENDING + 1, processed.size());
+        assertEquals(Byte.valueOf((byte) (submitted - 1)), processed.get(processed.size() - 1));
+        assertEquals(0, pipeline.getQueueDepth());
+
+        // Room again once processed
+        lane.submitPriority(new byte[] { 100 }, 100);
+        lane.submitPriority(new byte[] { 101 }, 101);
+        runTasks();
+        assertEquals(List.of((byte) 100, (byte) 101), processed.subList(processed.size() - 2, processed.size()));
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeIntervalEstimatorTest {
+
+    private static final long CONFIGURED_TIMEOUT = TimeUnit.SECONDS.toNanos(3960);
+
+    private final BTHomeIntervalEstimator estimator = new BTHomeIntervalEstimator();
+
+    @Test
+    void testLearnsRegularInterval() {
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            estimator.sample(now, false, CONFIGURED_TIMEOUT);
+            now += TimeUnit.SECONDS.toNanos(10);
+        }
+
+        long timeout = estimator.timeoutNanos(CONFIGURED_TIMEOUT);
+        assertTrue(timeout >= TimeUnit.SECONDS.toNanos(30) && timeout <= TimeUnit.SECONDS.toNanos(60),
+                "Timeout was " + timeout);
+        assertEquals("10.0 s", estimator.takeChangedInterval());
+        // Unchanged estimate is not published again
+        assertNull(estimator.takeChangedInterval());
+    }
+
+    @Test
+    void testConfiguredTimeoutUntilEnoughSamples() {
+        estimator.sample(0, false, CONFIGURED_TIMEOUT);
+        estimator.sample(TimeUnit.SECONDS.toNanos(10), false, CONFIGURED_TIMEOUT);
+        assertEquals(CONFIGURED_TIMEOUT, estimator.timeoutNanos(CONFIGURED_TIMEOUT));
+        assertNull(estimator.takeChangedInterval());
+    }
+
+    @Test
+    void testTriggerBasedDeviceUsesConfiguredTimeout() {
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            estimator.sample(now, true, CONFIGURED_TIMEOUT);
+            now += TimeUnit.SECONDS.toNanos(2);
+        }
+        assertEquals(CONFIGURED_TIMEOUT, estimator.timeoutNanos(CONFIGURED_TIMEOUT));
+        assertEquals(BTHomeIntervalEstimator.TRIGGER_BASED, estimator.takeChangedInterval());
+    }
+
+    @Test
+    void testOutagesAreNotLearned() {
+        long now = 0;
+        for (int i = 0; i < 10; i++) {
+            estimator.sample(now, false, CONFIGURED_TIMEOUT);
+            now += TimeUnit.SECONDS.toNanos(10);
+        }
+        long timeout = estimator.timeoutNanos(CONFIGURED_TIMEOUT);
+
+        // Back after a long outage
+        estimator.sample(now + CONFIGURED_TIMEOUT * 2, false, CONFIGURED_TIMEOUT);
+        assertEquals(timeout, estimator.timeoutNanos(CONFIGURED_TIMEOUT));
+    }
+}
@@ -0,0 +1,89 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeLayoutCacheTest {
+
+    private static final int OBJECT_ID_BATTERY = 0x01;
+    private static final int OBJECT_ID_TEMPERATURE = 0x02;
+    private static final int OBJECT_ID_MOTION = 0x21;
+    private static final int OBJECT_ID_DISTANCE = 0x40;
+
+    private final ThingUID thingUID = new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, "device");
+
+    private final BTHomeLayoutCache cache = new BTHomeLayoutCache();
+
+    @Test
+    void testAlternatingLayoutsAreFound() {
+        BTHomePacket measurements = packet(OBJECT_ID_BATTERY, OBJECT_ID_TEMPERATURE);
+        BTHomePacket motion = packet(OBJECT_ID_MOTION);
+        BTHomeLayoutCache.Layout measurementsLayout = cache.put(measurements, targets("battery", "temperature"), false);
+        BTHomeLayoutCache.Layout motionLayout = cache.put(motion, targets("motion"), false);
+
+        for (int i = 0; i < 3; i++) {
+            assertSame(measurementsLayout, cache.find(measurements));
+            assertSame(motionLayout, cache.find(motion));
+        }
+        assertEquals(new ChannelUID(thingUID, "temperature"), measurementsLayout.target(1));
+    }
+
+    @Test
+    void testOldestLayoutIsEvictedWhenFull() {
+        for (int i = 0; i <= BTHomeLayoutCache.CAPACITY; i++) {
+            cache.put(packet(i), targets("channel" + i), false);
+        }
+
+        assertNull(cache.find(packet(0)));
+        for (int i = 1; i <= BTHomeLayoutCache.CAPACITY; i++) {
+            assertEquals(new ChannelUID(thingUID, "channel" + i), cache.find(packet(i)).target(0));
+        }
+    }
+
+    @Test
+    void testLayoutsWithSameFingerprintAreKeptApart() {
+        // 31 * 0x01 + 0x40 == 31 * 0x02 + 0x21
+        BTHomePacket batteryAndDistance = packet(OBJECT_ID_BATTERY, OBJECT_ID_DISTANCE);
+        BTHomePacket temperatureAndMotion = packet(OBJECT_ID_TEMPERATURE, OBJECT_ID_MOTION);
+        BTHomeLayoutCache.Layout first = cache.put(batteryAndDistance, targets("battery", "distance"), false);
+
+        assertNull(cache.find(temperatureAndMotion));
+
+        BTHomeLayoutCache.Layout second = cache.put(temperatureAndMotion, targets("temperature", "motion"), false);
+        assertSame(first, cache.find(batteryAndDistance));
+        assertSame(second, cache.find(temperatureAndMotion));
+    }
+
+    @Test
+    void testClearForgetsLayouts() {
+        BTHomePacket measurements = packet(OBJECT_ID_BATTERY);
+        cache.put(measurements, targets("battery"), true);
+        cache.clear();
+        assertNull(cache.find(measurements));
+    }
+
+    private static BTHomePacket packet(int... objectIds) {
+        BTHomePacket packet = new BTHomePacket();
+        for (int objectId : objectIds) {
+            packet.onMeasurement(objectId, 0, 1);
+        }
+        return packet;
+    }
+
+    private ChannelUID[] targets(String... channelIds) {
+        ChannelUID[] targets = new ChannelUID[channelIds.length];
+        for (int i = 0; i < channelIds.length; i++) {
+            targets[i] = new ChannelUID(thingUID, channelIds[i]);
+        }
+        return targets;
+    }
+}
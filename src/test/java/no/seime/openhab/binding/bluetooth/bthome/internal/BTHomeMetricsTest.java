@@ -0,0 +1,102 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.thing.ThingUID;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeMetricsTest {
+
+    private static final ThingUID THING = new ThingUID("bthome:device:abc");
+    private static final ThingUID BRIDGE = new ThingUID("bluetooth:bluez:hci0");
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private BTHomeMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new BTHomeMetrics(new BTHomeIngestionPipeline(Runnable::run));
+        metrics.setRegistry(registry);
+    }
+
+    @Test
+    void testDeviceMetricsAreTaggedAndRemovedOnClose() {
+        metrics.setEnabled(true);
+        BTHomeMetrics.DeviceMetrics deviceMetrics = metrics.register(THING, BRIDGE);
+
+        assertTrue(deviceMetrics.isEnabled());
+        deviceMetrics.packetReceived();
+        deviceMetrics.packetReceived();
+        deviceMetrics.duplicateDropped();
+        deviceMetrics.statePublished();
+        deviceMetrics.processed(TimeUnit.MICROSECONDS.toNanos(50));
+
+        assertEquals(2, registry.get("bthome.packets.received").tag("thing", "bthome:device:abc")
+                .tag("bridge", "bluetooth:bluez:hci0").counter().count());
+        assertEquals(1, registry.get("bthome.packets.duplicate").counter().count());
+        assertEquals(0, registry.get("bthome.packets.rejected").counter().count());
+        assertEquals(1, registry.get("bthome.states.published").counter().count());
+        assertEquals(1, registry.get("bthome.packets.processing").timer().count());
+        assertEquals(1, registry.get("bthome.handlers").gauge().value());
+
+        deviceMetrics.close();
+
+        assertNull(registry.find("bthome.packets.received").counter());
+        assertEquals(0, registry.get("bthome.handlers").gauge().value());
+    }
+
+    @Test
+    void testHistogramsAreOnlyKeptBindingWide() {
+        metrics.setEnabled(true);
+        BTHomeMetrics.DeviceMetrics first = metrics.register(THING, BRIDGE);
+        BTHomeMetrics.DeviceMetrics second = metrics.register(new ThingUID("bthome:device:def"), BRIDGE);
+        first.processed(TimeUnit.MICROSECONDS.toNanos(50));
+        second.processed(TimeUnit.MICROSECONDS.toNanos(70));
+        first.priorityDispatched(TimeUnit.MILLISECONDS.toNanos(2));
+
+        assertEquals(0, registry.get("bthome.packets.processing").tag("thing", "bthome:device:abc").timer()
+                .takeSnapshot().histogramCounts().length);
+        assertEquals(2, registry.get("bthome.binding.processing").timer().count());
+        assertTrue(registry.get("bthome.binding.processing").timer().takeSnapshot().histogramCounts().length > 0);
+        assertEquals(1, registry.get("bthome.binding.priority.latency").timer().count());
+
+        // Binding wide timers outlive the things
+        first.close();
+        second.close();
+        assertEquals(2, registry.get("bthome.binding.processing").timer().count());
+    }
+
+    @Test
+    void testDisabledMetricsOnlyCountHandlers() {
+        BTHomeMetrics.DeviceMetrics deviceMetrics = metrics.register(THING, null);
+
+        assertFalse(deviceMetrics.isEnabled());
+        deviceMetrics.packetReceived();
+        assertNull(registry.find("bthome.packets.received").counter());
+        assertEquals(1, registry.get("bthome.handlers").gauge().value());
+
+        deviceMetrics.close();
+        assertEquals(0, registry.get("bthome.handlers").gauge().value());
+    }
+
+    @Test
+    void testBindingMetersAreRemovedWithRegistry() {
+        metrics.setRegistry(null);
+
+        assertNull(registry.find("bthome.handlers").gauge());
+        assertNull(registry.find("bthome.ingestion.queue").gauge());
+        assertNull(registry.find("bthome.binding.processing").timer());
+    }
+}
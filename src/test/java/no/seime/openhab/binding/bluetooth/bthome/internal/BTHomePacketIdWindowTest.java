@@ -0,0 +1,79 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static no.seime.openhab.binding.bluetooth.bthome.internal.BTHomePacketIdWindow.DROP;
+import static no.seime.openhab.binding.bluetooth.bthome.internal.BTHomePacketIdWindow.LATE;
+import static no.seime.openhab.binding.bluetooth.bthome.internal.BTHomePacketIdWindow.NEW;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomePacketIdWindowTest {
+
+    private final BTHomePacketIdWindow window = new BTHomePacketIdWindow();
+
+    @Test
+    void testRepeatedAndReorderedPackets() {
+        assertEquals(NEW, window.check(41, 0));
+        assertEquals(NEW, window.check(42, 0));
+        assertEquals(DROP, window.check(41, 0));
+        assertEquals(DROP, window.check(42, 0));
+        assertEquals(NEW, window.check(45, 0));
+        assertEquals(LATE, window.check(44, 0));
+        assertEquals(DROP, window.check(44, 0));
+        assertEquals(LATE, window.check(43, 0));
+    }
+
+    @Test
+    void testWraparound() {
+        assertEquals(NEW, window.check(254, 0));
+        assertEquals(NEW, window.check(255, 0));
+        assertEquals(NEW, window.check(0, 0));
+        assertEquals(DROP, window.check(255, 0));
+        assertEquals(NEW, window.check(2, 0));
+        assertEquals(LATE, window.check(1, 0));
+    }
+
+    @Test
+    void testIdsLeavingTheWindowAreStale() {
+        assertEquals(NEW, window.check(10, 0));
+        assertEquals(NEW, window.check(10 + BTHomePacketIdWindow.SIZE, 0));
+        assertEquals(DROP, window.check(10, 0));
+        assertEquals(LATE, window.check(11, 0));
+    }
+
+    @Test
+    void testRestartedDeviceIsFollowed() {
+        assertEquals(NEW, window.check(100, 0));
+        // Restarted, counting from 0 again
+        for (int i = 1; i < BTHomePacketIdWindow.RESYNC_THRESHOLD; i++) {
+            assertEquals(DROP, window.check(i, 0));
+        }
+        assertEquals(NEW, window.check(BTHomePacketIdWindow.RESYNC_THRESHOLD, 0));
+        assertEquals(NEW, window.check(BTHomePacketIdWindow.RESYNC_THRESHOLD + 1, 0));
+    }
+
+    @Test
+    void testDeviceReturningAfterLongGapIsFollowed() {
+        assertEquals(NEW, window.check(10, 0));
+        // About 210 packets missed, the id looks older than the newest
+        long later = TimeUnit.MILLISECONDS.toNanos(BTHomePacketIdWindow.RESYNC_GAP_MILLIS) + 1;
+        assertEquals(NEW, window.check(220, later));
+        assertEquals(NEW, window.check(221, later + 1));
+        assertEquals(LATE, window.check(219, later + 2));
+    }
+
+    @Test
+    void testRebootJustBelowOldCounterIsFollowed() {
+        assertEquals(NEW, window.check(30, 0));
+        long later = TimeUnit.MILLISECONDS.toNanos(BTHomePacketIdWindow.RESYNC_GAP_MILLIS) + 1;
+        assertEquals(NEW, window.check(0, later));
+        assertEquals(NEW, window.check(1, later + 1));
+        assertEquals(DROP, window.check(1, later + 2));
+    }
+}
@@ -0,0 +1,51 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomePayloadStoreTest {
+
+    private static final long MAX_AGE = 7200000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPayloadsSurviveRestart() {
+        Path file = tempDir.resolve("bthome").resolve("payloads.bin");
+        BTHomePayloadStore store = new BTHomePayloadStore(file, null);
+        store.put("bluetooth:bthome:adapter:device1", new byte[] { 64, 1, 100 }, 1000);
+        store.put("bluetooth:bthome:adapter:device2", new byte[] { 64, 2, -54, 9 }, 2000);
+        store.put("bluetooth:bthome:adapter:device3", new byte[] { 64, 1, 50 }, 3000);
+        store.remove("bluetooth:bthome:adapter:device3");
+        store.deactivate();
+
+        BTHomePayloadStore restarted = new BTHomePayloadStore(file, null);
+        BTHomePayloadStore.Payload payload = restarted.get("bluetooth:bthome:adapter:device1", MAX_AGE, 5000);
+        assertNotNull(payload);
+        assertArrayEquals(new byte[] { 64, 1, 100 }, payload.getData());
+        assertEquals(1000, payload.getReceivedEpochMillis());
+        assertNotNull(restarted.get("bluetooth:bthome:adapter:device2", MAX_AGE, 5000));
+        assertNull(restarted.get("bluetooth:bthome:adapter:device3", MAX_AGE, 5000));
+    }
+
+    @Test
+    void testOldPayloadIsNotReturned() {
+        BTHomePayloadStore store = new BTHomePayloadStore(tempDir.resolve("payloads.bin"), null);
+        store.put("bluetooth:bthome:adapter:device1", new byte[] { 64, 1, 100 }, 1000);
+
+        assertNotNull(store.get("bluetooth:bthome:adapter:device1", MAX_AGE, 1000 + MAX_AGE));
+        assertNull(store.get("bluetooth:bthome:adapter:device1", MAX_AGE, 1001 + MAX_AGE));
+    }
+}
@@ -0,0 +1,87 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.SIUnits;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomePublicationCacheTest {
+
+    private final ChannelUID channelUID = new ChannelUID(
+            new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, "device"), "temperature");
+
+    private final BTHomePublicationCache cache = new BTHomePublicationCache();
+
+    @Test
+    void testAlwaysPolicyPublishesEveryValue() {
+        Channel channel = createChannel(Map.of());
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20), 0));
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20), 1));
+        assertEquals(celsius(20), cache.getLastPublished(channelUID));
+    }
+
+    @Test
+    void testChangePolicyWithDeadband() {
+        Channel channel = createChannel(Map.of("publishPolicy", "change", "deadbandAbsolute", 0.5));
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20), 0));
+        assertFalse(cache.shouldPublish(channelUID, channel, celsius(20), 1));
+        assertFalse(cache.shouldPublish(channelUID, channel, celsius(20.4), 2));
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20.6), 3));
+        assertEquals(celsius(20.6), cache.getLastPublished(channelUID));
+    }
+
+    @Test
+    void testChangePolicyRepublishesAfterMaxInterval() {
+        Channel channel = createChannel(Map.of("publishPolicy", "change", "maxPublishIntervalSeconds", 60));
+        assertTrue(cache.shouldPublish(channelUID, channel, OnOffType.ON, 0));
+        assertFalse(cache.shouldPublish(channelUID, channel, OnOffType.ON, TimeUnit.SECONDS.toNanos(59)));
+        assertTrue(cache.shouldPublish(channelUID, channel, OnOffType.ON, TimeUnit.SECONDS.toNanos(60)));
+        assertTrue(cache.shouldPublish(channelUID, channel, OnOffType.OFF, TimeUnit.SECONDS.toNanos(61)));
+    }
+
+    @Test
+    void testUndefPublishesNextValue() {
+        Channel channel = createChannel(Map.of("publishPolicy", "change"));
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20), 0));
+        assertTrue(cache.shouldPublishUndef(channelUID, false));
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20), 1));
+    }
+
+    @Test
+    void testUndefIsOnlyPublishedOnce() {
+        Channel channel = createChannel(Map.of());
+        assertTrue(cache.shouldPublishUndef(channelUID, false));
+        assertFalse(cache.shouldPublishUndef(channelUID, false));
+
+        assertTrue(cache.shouldPublish(channelUID, channel, celsius(20), 0));
+        // A published value is kept unless forced
+        assertFalse(cache.shouldPublishUndef(channelUID, true));
+        assertTrue(cache.shouldPublishUndef(channelUID, false));
+        assertNull(cache.getLastPublished(channelUID));
+    }
+
+    private Channel createChannel(Map<String, Object> configuration) {
+        return ChannelBuilder.create(channelUID).withConfiguration(new Configuration(configuration)).build();
+    }
+
+    private static QuantityType<?> celsius(double value) {
+        return new QuantityType<>(value, SIUnits.CELSIUS);
+    }
+}
@@ -0,0 +1,80 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.unit.Units;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.types.State;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeRateTrackerTest {
+
+    private static final int OBJECT_ID_ENERGY = 0x0A;
+    private static final int OBJECT_ID_COUNT_UINT16 = 0x3D;
+
+    private final ChannelUID channelUID = new ChannelUID(
+            new ThingUID(BTHomeBindingConstants.THING_TYPE_DEVICE, "device"), "energy");
+
+    private final BTHomeRateTracker tracker = new BTHomeRateTracker();
+
+    @Test
+    void testPowerIsDerivedFromEnergy() {
+        assertNull(sample(OBJECT_ID_ENERGY, 1000, 0));
+        // 0.1 kWh in 6 minutes
+        QuantityType<?> power = (QuantityType<?>) sample(OBJECT_ID_ENERGY, 1100, 360);
+
+        assertEquals(Units.WATT, power.getUnit());
+        assertEquals(1000, power.doubleValue(), 0.001);
+    }
+
+    @Test
+    void testCounterRolloverIsFollowed() {
+        assertNull(sample(OBJECT_ID_COUNT_UINT16, 65530, 0));
+        assertEquals(10, ((DecimalType) sample(OBJECT_ID_COUNT_UINT16, 4, 60)).doubleValue(), 0.001);
+    }
+
+    @Test
+    void testDeviceResetStartsOver() {
+        assertNull(sample(OBJECT_ID_COUNT_UINT16, 5000, 0));
+        assertEquals(1000, ((DecimalType) sample(OBJECT_ID_COUNT_UINT16, 6000, 60)).doubleValue(), 0.001);
+
+        assertNull(sample(OBJECT_ID_COUNT_UINT16, 10, 120));
+        assertEquals(10, ((DecimalType) sample(OBJECT_ID_COUNT_UINT16, 20, 180)).doubleValue(), 0.001);
+    }
+
+    @Test
+    void testRateIsComputedOverLastValues() {
+        assertNull(sample(OBJECT_ID_COUNT_UINT16, 0, 0));
+        sample(OBJECT_ID_COUNT_UINT16, 1000, 60);
+        long count = 1000;
+        for (int i = 2; i <= BTHomeRateTracker.SIZE; i++) {
+            count += 10;
+            sample(OBJECT_ID_COUNT_UINT16, count, i * 60);
+        }
+        // The burst of the first minute is out of the buffer
+        State rate = sample(OBJECT_ID_COUNT_UINT16, count + 10, (BTHomeRateTracker.SIZE + 1) * 60);
+        assertEquals(10, ((DecimalType) rate).doubleValue(), 0.001);
+    }
+
+    @Test
+    void testDerivedChannelIdKeepsCounterSuffix() {
+        assertEquals("energy-rate", BTHomeDerivedRate.ENERGY_RATE.channelId("energy"));
+        assertEquals("energy-rate_2", BTHomeDerivedRate.ENERGY_RATE.channelId("energy_2"));
+    }
+
+    private State sample(int objectId, long rawValue, long seconds) {
+        BTHomeConversionTable.Conversion conversion = BTHomeConversionTable.get(objectId);
+        BTHomeDerivedRate derivedRate = BTHomeDerivedRate.fromObjectId(objectId);
+        return tracker.sample(channelUID, derivedRate, conversion, rawValue, TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
@@ -0,0 +1,57 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeStartupThrottleTest {
+
+    private final List<String> ran = new ArrayList<>();
+
+    @Test
+    void testBurstIsSpreadOverRamp() {
+        BTHomeStartupThrottle throttle = new BTHomeStartupThrottle(null, TimeUnit.SECONDS.toMillis(10));
+        for (int i = 0; i < 100; i++) {
+            String key = "thing" + i;
+            throttle.submit(key, () -> ran.add(key));
+        }
+        assertEquals(0, ran.size());
+
+        // 250 ms ticks, 40 ticks in the ramp
+        throttle.drain();
+        assertEquals(3, ran.size());
+        for (int i = 1; i < 34; i++) {
+            throttle.drain();
+        }
+        assertEquals(100, ran.size());
+        assertEquals("thing0", ran.get(0));
+    }
+
+    @Test
+    void testQueuedWorkOfThingIsReplacedOrCancelled() {
+        BTHomeStartupThrottle throttle = new BTHomeStartupThrottle(null, TimeUnit.SECONDS.toMillis(10));
+        throttle.submit("thing1", () -> ran.add("first"));
+        throttle.submit("thing1", () -> ran.add("second"));
+        throttle.submit("thing2", () -> ran.add("cancelled"));
+        throttle.cancel("thing2");
+
+        throttle.drain();
+        throttle.drain();
+        assertEquals(List.of("second"), ran);
+    }
+
+    @Test
+    void testNoRampRunsImmediately() {
+        BTHomeStartupThrottle throttle = new BTHomeStartupThrottle(null, 0);
+        throttle.submit("thing1", () -> ran.add("thing1"));
+        assertEquals(List.of("thing1"), ran);
+    }
+}
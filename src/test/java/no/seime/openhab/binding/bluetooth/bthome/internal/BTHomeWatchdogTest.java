@@ -0,0 +1,97 @@
+package no.seime.openhab.binding.bluetooth.bthome.internal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author Arne Seime - Initial contribution
+ */
+class BTHomeWatchdogTest {
+
+    private long now = 0;
+    private final BTHomeWatchdog watchdog = new BTHomeWatchdog(() -> now);
+
+    @Test
+    void testExpiresOnceWhenNotSeen() {
+        AtomicInteger expired = new AtomicInteger();
+        watchdog.register("device", TimeUnit.SECONDS.toNanos(10), expired::incrementAndGet);
+
+        advanceSeconds(9);
+        assertEquals(0, expired.get());
+        advanceSeconds(2);
+        assertEquals(1, expired.get());
+        advanceSeconds(60);
+        assertEquals(1, expired.get());
+    }
+
+    @Test
+    void testTouchPostponesExpiry() {
+        AtomicInteger expired = new AtomicInteger();
+        BTHomeWatchdog.Registration registration = watchdog.register("device", TimeUnit.SECONDS.toNanos(10),
+                expired::incrementAndGet);
+
+        for (int i = 0; i < 10; i++) {
+            advanceSeconds(5);
+            registration.touch();
+        }
+        assertEquals(0, expired.get());
+
+        advanceSeconds(11);
+        assertEquals(1, expired.get());
+
+        // Seen again, then silent again
+        registration.touch();
+        advanceSeconds(5);
+        assertEquals(1, expired.get());
+        advanceSeconds(6);
+        assertEquals(2, expired.get());
+    }
+
+    @Test
+    void testTimeoutLongerThanWheel() {
+        AtomicInteger expired = new AtomicInteger();
+        watchdog.register("device", TimeUnit.HOURS.toNanos(3), expired::incrementAndGet);
+
+        advanceSeconds(3 * 3600 - 1);
+        assertEquals(0, expired.get());
+        advanceSeconds(2);
+        assertEquals(1, expired.get());
+    }
+
+    @Test
+    void testCancelledRegistrationDoesNotExpire() {
+        AtomicInteger expired = new AtomicInteger();
+        watchdog.register("device", TimeUnit.SECONDS.toNanos(10), expired::incrementAndGet).cancel();
+
+        advanceSeconds(20);
+        assertEquals(0, expired.get());
+    }
+
+    @Test
+    void testTickListenersAreCalledUntilRemoved() {
+        List<Long> ticks = new ArrayList<>();
+        LongConsumer listener = ticks::add;
+        watchdog.addTickListener(listener);
+
+        advanceSeconds(1);
+        assertEquals(List.of(TimeUnit.SECONDS.toNanos(1)), ticks);
+        watchdog.removeTickListener(listener);
+        advanceSeconds(1);
+        assertEquals(1, ticks.size());
+    }
+
+    private void advanceSeconds(int seconds) {
+        for (int i = 0; i < seconds; i++) {
+            now += TimeUnit.SECONDS.toNanos(1);
+            watchdog.tick();
+        }
+    }
+}
@@ -1,5 +1,11 @@
 package no.seime.openhab.binding.bluetooth.bthome.internal;
 
+import java.io.ByteArrayOutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
 import io.kaitai.struct.ByteBufferKaitaiStream;
 import io.kaitai.struct.KaitaiStream;
 
@@ -21,4 +27,62 @@ public class TestUtils {
 
         return data;
     }
+
+    /**
+     * Encrypt measurements the way a BTHome device does (AES-CCM, 4 byte MIC), returning the complete service data
+     * with device information 0x41 (V2, encrypted).
+     */
+    public static byte[] encrypt(byte[] key, byte[] mac, byte[] measurements, long counter)
+            throws GeneralSecurityException {
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+
+        byte deviceInformation = 0x41;
+        byte[] counterBytes = { (byte) counter, (byte) (counter >> 8), (byte) (counter >> 16),
+                (byte) (counter >> 24) };
+        byte[] nonce = new byte[13];
+        System.arraycopy(mac, 0, nonce, 0, 6);
+        nonce[6] = (byte) 0xD2;
+        nonce[7] = (byte) 0xFC;
+        nonce[8] = deviceInformation;
+        System.arraycopy(counterBytes, 0, nonce, 9, 4);
+
+        // CBC-MAC
+        byte[] x = new byte[16];
+        x[0] = 0x09;
+        System.arraycopy(nonce, 0, x, 1, 13);
+        x[15] = (byte) measurements.length;
+        x = aes.doFinal(x);
+        for (int offset = 0; offset < measurements.length; offset += 16) {
+            for (int i = 0; i < 16 && offset + i < measurements.length; i++) {
+                x[i] ^= measurements[offset + i];
+            }
+            x = aes.doFinal(x);
+        }
+
+        // CTR
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(deviceInformation);
+        for (int offset = 0; offset < measurements.length; offset += 16) {
+            byte[] s = aes.doFinal(counterBlock(nonce, offset / 16 + 1));
+            for (int i = 0; i < 16 && offset + i < measurements.length; i++) {
+                out.write(measurements[offset + i] ^ s[i]);
+            }
+        }
+        out.write(counterBytes, 0, 4);
+        byte[] s0 = aes.doFinal(counterBlock(nonce, 0));
+        for (int i = 0; i < 4; i++) {
+            out.write(x[i] ^ s0[i]);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] counterBlock(byte[] nonce, int i) {
+        byte[] block = new byte[16];
+        block[0] = 0x01;
+        System.arraycopy(nonce, 0, block, 1, 13);
+        block[14] = (byte) (i >> 8);
+        block[15] = (byte) i;
+        return block;
+    }
 }
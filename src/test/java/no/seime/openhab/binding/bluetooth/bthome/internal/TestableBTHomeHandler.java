@@ -1,13 +1,31 @@
 package no.seime.openhab.binding.bluetooth.bthome.internal;
 
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.UUID;
 
 import org.openhab.core.config.core.Configuration;
 import org.openhab.core.thing.Thing;
 
 public class TestableBTHomeHandler extends BTHomeHandler {
     public TestableBTHomeHandler(Thing thing, BTHomeChannelTypeProvider dynamicChannelTypeProvider) {
-        super(thing, dynamicChannelTypeProvider);
+        // Payloads are never written
+        this(thing, dynamicChannelTypeProvider, new BTHomePayloadStore(
+                Path.of(System.getProperty("java.io.tmpdir"), "bthome-" + UUID.randomUUID() + ".bin"), null));
+    }
+
+    public TestableBTHomeHandler(Thing thing, BTHomeChannelTypeProvider dynamicChannelTypeProvider,
+            BTHomePayloadStore payloadStore) {
+        this(thing, dynamicChannelTypeProvider, payloadStore, new BTHomeBindingConfiguration());
+    }
+
+    public TestableBTHomeHandler(Thing thing, BTHomeChannelTypeProvider dynamicChannelTypeProvider,
+            BTHomePayloadStore payloadStore, BTHomeBindingConfiguration bindingConfiguration) {
+        // Process and initialize synchronously on the calling thread, watchdog never ticks
+        super(thing, dynamicChannelTypeProvider, new BTHomeIngestionPipeline(Runnable::run),
+                new BTHomeWatchdog(System::nanoTime), bindingConfiguration, payloadStore,
+                new BTHomeStartupThrottle(null, 0), new BTHomeMetrics(new BTHomeIngestionPipeline(Runnable::run)),
+                new BTHomeAdapterTracker());
     }
 
     @Override